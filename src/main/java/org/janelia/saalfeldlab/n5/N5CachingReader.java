@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.n5.metadata.N5Metadata;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+
+/**
+ * A reader that remembers the attributes, dataset attributes and
+ * {@link #datasetExists(String)} answers of another reader per path, so that
+ * discovery, metadata parsing and opening a dataset read each attributes
+ * file once.  Blocks, listings and {@link #exists(String)} are not cached.
+ * <p>
+ * Entries expire after a time to live.  Concurrent requests for a path that
+ * is not cached wait for one read.  Call {@link #invalidate(String)} after
+ * writing to a path through another reader.
+ */
+public class N5CachingReader extends AbstractGsonReader
+{
+	/**
+	 * Time to live of entries that never expire.
+	 */
+	public static final long NO_EXPIRY = -1;
+
+	private final AbstractGsonReader n5;
+
+	private final long ttlNanos;
+
+	private final ConcurrentHashMap< String, Entry< HashMap< String, JsonElement > > > attributes = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap< String, Entry< DatasetAttributes > > datasetAttributes = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap< String, Entry< Boolean > > datasetExists = new ConcurrentHashMap<>();
+
+	/**
+	 * @param n5 the reader
+	 * @param ttlMillis the time to live of entries in milliseconds, or {@link #NO_EXPIRY}
+	 */
+	public N5CachingReader( final AbstractGsonReader n5, final long ttlMillis )
+	{
+		super( N5Metadata.getGsonBuilder() );
+		this.n5 = n5;
+		this.ttlNanos = ttlMillis < 0 ? NO_EXPIRY : TimeUnit.MILLISECONDS.toNanos( ttlMillis );
+	}
+
+	public N5CachingReader( final AbstractGsonReader n5 )
+	{
+		this( n5, NO_EXPIRY );
+	}
+
+	/**
+	 * Wraps json based readers in a caching reader, and returns other readers,
+	 * such as HDF5, that do not read attributes files, as they are.
+	 *
+	 * @param n5 the reader
+	 * @param ttlMillis the time to live of entries in milliseconds, or {@link #NO_EXPIRY}
+	 * @return the caching reader or n5
+	 */
+	public static N5Reader wrap( final N5Reader n5, final long ttlMillis )
+	{
+		if ( n5 instanceof AbstractGsonReader && !( n5 instanceof N5CachingReader ) )
+			return new N5CachingReader( ( AbstractGsonReader ) n5, ttlMillis );
+		else
+			return n5;
+	}
+
+	/**
+	 * Code that needs to know the backend, such as its base path, looks at the
+	 * wrapped reader.
+	 *
+	 * @param n5 the reader
+	 * @return the reader that n5 wraps, or n5 if it is not a caching reader
+	 */
+	public static N5Reader unwrap( final N5Reader n5 )
+	{
+		return n5 instanceof N5CachingReader ? ( ( N5CachingReader ) n5 ).getReader() : n5;
+	}
+
+	public AbstractGsonReader getReader()
+	{
+		return n5;
+	}
+
+	/**
+	 * Forgets everything cached for a path.
+	 *
+	 * @param pathName the path
+	 */
+	public void invalidate( final String pathName )
+	{
+		final String key = key( pathName );
+		attributes.remove( key );
+		datasetAttributes.remove( key );
+		datasetExists.remove( key );
+	}
+
+	/**
+	 * Forgets everything cached.
+	 */
+	public void invalidateAll()
+	{
+		attributes.clear();
+		datasetAttributes.clear();
+		datasetExists.clear();
+	}
+
+	@Override
+	public Gson getGson()
+	{
+		return n5.getGson();
+	}
+
+	/**
+	 * @return a copy of the cached attributes, callers may change it
+	 */
+	@Override
+	public HashMap< String, JsonElement > getAttributes( final String pathName ) throws IOException
+	{
+		final HashMap< String, JsonElement > map = get( attributes, pathName, () -> n5.getAttributes( pathName ) );
+		return map == null ? null : new HashMap<>( map );
+	}
+
+	@Override
+	public DatasetAttributes getDatasetAttributes( final String pathName ) throws IOException
+	{
+		return get( datasetAttributes, pathName, () -> n5.getDatasetAttributes( pathName ) );
+	}
+
+	@Override
+	public boolean datasetExists( final String pathName ) throws IOException
+	{
+		return get( datasetExists, pathName, () -> n5.datasetExists( pathName ) );
+	}
+
+	@Override
+	public boolean exists( final String pathName )
+	{
+		return n5.exists( pathName );
+	}
+
+	@Override
+	public String[] list( final String pathName ) throws IOException
+	{
+		return n5.list( pathName );
+	}
+
+	@Override
+	public DataBlock< ? > readBlock( final String pathName, final DatasetAttributes datasetAttributes, final long... gridPosition ) throws IOException
+	{
+		return n5.readBlock( pathName, datasetAttributes, gridPosition );
+	}
+
+	@Override
+	public void close()
+	{
+		invalidateAll();
+		n5.close();
+	}
+
+	private < T > T get( final ConcurrentHashMap< String, Entry< T > > cache, final String pathName, final Callable< T > read ) throws IOException
+	{
+		final String key = key( pathName );
+		final Entry< T > entry = cache.compute( key, ( k, e ) -> e == null || e.isExpired() ? new Entry<>( read ) : e );
+
+		// the first caller reads, the others wait for it
+		entry.value.run();
+		try
+		{
+			return entry.value.get();
+		}
+		catch ( final ExecutionException e )
+		{
+			// failed reads are tried again
+			cache.remove( key, entry );
+			if ( e.getCause() instanceof IOException )
+				throw ( IOException ) e.getCause();
+			else
+				throw new IOException( e.getCause() );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+	}
+
+	/*
+	 * "/a/b", "a/b" and "a/b/" are the same node.
+	 */
+	private static String key( final String pathName )
+	{
+		int start = 0;
+		int end = pathName.length();
+		while ( start < end && pathName.charAt( start ) == '/' )
+			start++;
+
+		while ( end > start && pathName.charAt( end - 1 ) == '/' )
+			end--;
+
+		return pathName.substring( start, end );
+	}
+
+	private class Entry< T >
+	{
+		private final FutureTask< T > value;
+
+		private final long created = System.nanoTime();
+
+		public Entry( final Callable< T > read )
+		{
+			this.value = new FutureTask<>( read );
+		}
+
+		public boolean isExpired()
+		{
+			return ttlNanos != NO_EXPIRY && System.nanoTime() - created > ttlNanos;
+		}
+	}
+}
@@ -0,0 +1,453 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.janelia.saalfeldlab.n5.metadata.MetadataParserIndex;
+import org.janelia.saalfeldlab.n5.metadata.N5MetadataParser;
+import org.janelia.saalfeldlab.n5.zarr.N5ZarrReader;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * An index of all groups and datasets of an n5 container, stored under
+ * {@link #KEY} in the attributes of the group {@link #GROUP} next to the root
+ * attributes, so that the container can be discovered with a single read.
+ * The root attributes stay small, readers that open the container or parse
+ * its root do not pay for the index.  Discovery does not list the index
+ * group.  This is the n5 counterpart of {@link ZarrConsolidatedMetadata}.
+ * <p>
+ * Every node stores whether it is a dataset, the class of the metadata the
+ * given parsers found for it, and its attributes, which the discoverer parses
+ * without reading them again.
+ * <p>
+ * On file systems, every node also stores a version token from a
+ * {@link N5DiscoveryCache.ChangeDetector} (the modification times of its
+ * directory and attributes file), and the index is fresh only if no token
+ * changed, so that groups and datasets added or removed by other tools are
+ * noticed.  Checking costs a stat per node.  Cloud storage has no cheap token
+ * for the children of a group, so {@link #isFresh(N5Reader)} is false there
+ * and discovery uses the index only if told to trust it (see
+ * {@link N5DatasetDiscoverer#setTrustContainerIndex(boolean)}).  Writers
+ * should {@link #update(N5Reader, String, N5MetadataParser...)} the index
+ * after writing.
+ */
+public class N5ContainerIndex
+{
+	public static final String KEY = "n5ijIndex";
+
+	/**
+	 * The group below the container root whose attributes hold the index.
+	 */
+	public static final String GROUP = ".n5ij-index";
+
+	public static final int VERSION = 3;
+
+	private static final String VERSION_KEY = "version";
+
+	private static final String CREATED_KEY = "created";
+
+	private static final String NODES_KEY = "nodes";
+
+	private static final String DATASET_KEY = "dataset";
+
+	private static final String METADATA_TYPE_KEY = "metadataType";
+
+	private static final String ATTRIBUTES_KEY = "attributes";
+
+	private static final String NODE_VERSION_KEY = "nodeVersion";
+
+	private final TreeMap< String, JsonObject > nodes;
+
+	private long created;
+
+	private N5ContainerIndex( final TreeMap< String, JsonObject > nodes, final long created )
+	{
+		this.nodes = nodes;
+		this.created = created;
+	}
+
+	/**
+	 * @param n5 the reader
+	 * @return the index of the container, or null if it has none or n5 is not an {@link AbstractGsonReader}
+	 */
+	public static N5ContainerIndex read( final N5Reader n5 )
+	{
+		if ( !( n5 instanceof AbstractGsonReader ) )
+			return null;
+
+		try
+		{
+			return read( ( ( AbstractGsonReader ) n5 ).getAttributes( GROUP ) );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @param indexAttributes the attributes of the {@link #GROUP}
+	 * @return the index, or null if there is none
+	 */
+	public static N5ContainerIndex read( final Map< String, JsonElement > indexAttributes )
+	{
+		final JsonElement json = indexAttributes == null ? null : indexAttributes.get( KEY );
+		if ( json == null || !json.isJsonObject() )
+			return null;
+
+		final JsonObject obj = json.getAsJsonObject();
+		if ( !obj.has( VERSION_KEY ) || obj.get( VERSION_KEY ).getAsInt() != VERSION || !obj.has( NODES_KEY ) )
+			return null;
+
+		final TreeMap< String, JsonObject > nodes = new TreeMap<>();
+		for ( final Map.Entry< String, JsonElement > e : obj.getAsJsonObject( NODES_KEY ).entrySet() )
+			if ( e.getValue().isJsonObject() )
+				nodes.put( e.getKey(), e.getValue().getAsJsonObject() );
+
+		final long created = obj.has( CREATED_KEY ) ? obj.get( CREATED_KEY ).getAsLong() : 0;
+		return new N5ContainerIndex( nodes, created );
+	}
+
+	/**
+	 * Indexes a container.  Groups are listed and attributes are read
+	 * concurrently, {@link N5DatasetDiscoverer#defaultParallelism(N5Reader)}
+	 * requests at a time.
+	 *
+	 * @param n5 the reader, an {@link AbstractGsonReader}
+	 * @param parsers the metadata parsers that give the metadata type of nodes
+	 * @return the index
+	 * @throws IOException the exception
+	 */
+	public static N5ContainerIndex build( final N5Reader n5, final N5MetadataParser< ? >... parsers ) throws IOException
+	{
+		final N5ContainerIndex index = new N5ContainerIndex( new TreeMap<>(), 0 );
+		index.update( n5, "", parsers );
+		return index;
+	}
+
+	/**
+	 * Indexes a subtree of the container again, and the groups above it.
+	 *
+	 * @param n5 the reader, an {@link AbstractGsonReader}
+	 * @param path the root of the subtree
+	 * @param parsers the metadata parsers that give the metadata type of nodes
+	 * @throws IOException the exception
+	 */
+	public void update( final N5Reader n5, final String path, final N5MetadataParser< ? >... parsers ) throws IOException
+	{
+		if ( !( n5 instanceof AbstractGsonReader ) )
+			throw new IOException( "Only containers with json attributes can be indexed." );
+
+		final String base = relativePath( path );
+		nodes.keySet().removeIf( x -> isBelow( x, base ) );
+
+		final MetadataParserIndex parserIndex = new MetadataParserIndex( parsers );
+		final N5DiscoveryCache.ChangeDetector detector = changeDetector( n5 );
+		final ForkJoinPool pool = new ForkJoinPool( N5DatasetDiscoverer.defaultParallelism( n5 ) );
+		try
+		{
+			List< String > level = Collections.singletonList( base );
+			while ( !level.isEmpty() )
+			{
+				final List< String > thisLevel = level;
+				final List< List< String > > children = pool.submit( () -> thisLevel.parallelStream()
+						.map( x -> index( ( AbstractGsonReader ) n5, x, parserIndex, detector ) )
+						.collect( Collectors.toList() ) ).get();
+
+				level = children.stream().flatMap( List::stream ).collect( Collectors.toList() );
+			}
+
+			// the groups above may have group metadata that changed
+			final List< String > ancestors = new ArrayList<>();
+			for ( String parent = parent( base ); parent != null; parent = parent( parent ) )
+				ancestors.add( parent );
+
+			pool.submit( () -> ancestors.parallelStream().forEach( x -> index( ( AbstractGsonReader ) n5, x, parserIndex, detector ) ) ).get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			if ( e.getCause() instanceof UncheckedIOException )
+				throw ( ( UncheckedIOException ) e.getCause() ).getCause();
+			else
+				throw new IOException( e.getCause() );
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		created = System.currentTimeMillis();
+	}
+
+	/*
+	 * Indexes one node and returns the paths of the children to index.
+	 */
+	private List< String > index( final AbstractGsonReader n5, final String path, final MetadataParserIndex parserIndex,
+			final N5DiscoveryCache.ChangeDetector detector )
+	{
+		try
+		{
+			// before reading, so that changes made meanwhile make the index stale
+			final String version = detector == null ? null : detector.version( path );
+
+			HashMap< String, JsonElement > attributes = n5.getAttributes( path );
+			if ( attributes == null )
+				attributes = new HashMap<>();
+
+			final N5TreeNode node = new N5TreeNode( path, false );
+			N5DatasetDiscoverer.parseMetadata( n5, node, parserIndex, null, attributes );
+			final boolean isDataset = attributes.containsKey( "dimensions" ) && attributes.containsKey( "dataType" );
+
+			final JsonObject entry = new JsonObject();
+			entry.addProperty( DATASET_KEY, isDataset );
+			if ( version != null )
+				entry.addProperty( NODE_VERSION_KEY, version );
+			if ( node.getMetadata() != null )
+				entry.addProperty( METADATA_TYPE_KEY, node.getMetadata().getClass().getName() );
+
+			final JsonObject attributesJson = new JsonObject();
+			attributes.forEach( attributesJson::add );
+			entry.add( ATTRIBUTES_KEY, attributesJson );
+
+			synchronized ( nodes )
+			{
+				nodes.put( path, entry );
+			}
+
+			if ( isDataset )
+				return Collections.emptyList();
+
+			// only datasets have blocks, so the children of groups are no blocks
+			final String[] children = n5.list( path );
+
+			final List< String > childPaths = new ArrayList<>( children.length );
+			for ( final String child : children )
+			{
+				final String childPath = path.isEmpty() ? child : path + "/" + child;
+				if ( !isIndexGroup( childPath ) )
+					childPaths.add( childPath );
+			}
+
+			return childPaths;
+		}
+		catch ( final IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Stores this index in the {@link #GROUP} of a container.
+	 *
+	 * @param n5 the writer
+	 * @throws IOException the exception
+	 */
+	public void write( final N5Writer n5 ) throws IOException
+	{
+		if ( !n5.exists( GROUP ) )
+		{
+			n5.createGroup( GROUP );
+
+			// adding the group changed the root, after it was indexed
+			final N5DiscoveryCache.ChangeDetector detector = changeDetector( n5 );
+			final JsonObject root = nodes.get( "" );
+			if ( detector != null && root != null && root.has( NODE_VERSION_KEY ) )
+				root.addProperty( NODE_VERSION_KEY, detector.version( "" ) );
+		}
+
+		final JsonObject nodesJson = new JsonObject();
+		nodes.forEach( nodesJson::add );
+
+		final JsonObject json = new JsonObject();
+		json.addProperty( VERSION_KEY, VERSION );
+		json.addProperty( CREATED_KEY, created );
+		json.add( NODES_KEY, nodesJson );
+		n5.setAttribute( GROUP, KEY, json );
+	}
+
+	/**
+	 * Builds and stores the index of a container.
+	 *
+	 * @param n5 the writer
+	 * @param parsers the metadata parsers that give the metadata type of nodes
+	 * @return the index
+	 * @throws IOException the exception
+	 */
+	public static N5ContainerIndex reindex( final N5Writer n5, final N5MetadataParser< ? >... parsers ) throws IOException
+	{
+		final N5ContainerIndex index = build( n5, parsers );
+		index.write( n5 );
+		return index;
+	}
+
+	/**
+	 * Whether no indexed node changed since it was indexed.  Always false for
+	 * containers without a change detector, such as on cloud storage.
+	 *
+	 * @param n5 the reader
+	 * @return true if the version tokens of all indexed nodes are unchanged
+	 */
+	public boolean isFresh( final N5Reader n5 )
+	{
+		final N5DiscoveryCache.ChangeDetector detector = changeDetector( n5 );
+		if ( detector == null || nodes.isEmpty() )
+			return false;
+
+		try
+		{
+			for ( final Map.Entry< String, JsonObject > e : nodes.entrySet() )
+			{
+				final JsonElement version = e.getValue().get( NODE_VERSION_KEY );
+				if ( version == null || !version.getAsString().equals( detector.version( e.getKey() ) ) )
+					return false;
+			}
+			return true;
+		}
+		catch ( final RuntimeException e )
+		{
+			return false;
+		}
+	}
+
+	/*
+	 * Versions nodes of file system containers by the modification times of
+	 * their directory and attributes file.
+	 */
+	private static N5DiscoveryCache.ChangeDetector changeDetector( final N5Reader n5 )
+	{
+		final N5Reader backend = N5CachingReader.unwrap( n5 );
+		if ( !( backend instanceof N5FSReader ) || backend instanceof N5ZarrReader )
+			return null;
+
+		return N5DiscoveryCache.fileSystemDetector( ( ( N5FSReader ) backend ).getBasePath(), "attributes.json" );
+	}
+
+	/**
+	 * @param path a path in the container
+	 * @return true if path is the {@link #GROUP} or below it
+	 */
+	public static boolean isIndexGroup( final String path )
+	{
+		final String relative = relativePath( path );
+		return relative.equals( GROUP ) || relative.startsWith( GROUP + "/" );
+	}
+
+	public long getCreated()
+	{
+		return created;
+	}
+
+	/**
+	 * @return the paths of all indexed groups and datasets, relative to the container root
+	 */
+	public List< String > getPaths()
+	{
+		return new ArrayList<>( nodes.keySet() );
+	}
+
+	public boolean isDataset( final String path )
+	{
+		final JsonObject entry = nodes.get( relativePath( path ) );
+		return entry != null && entry.has( DATASET_KEY ) && entry.get( DATASET_KEY ).getAsBoolean();
+	}
+
+	/**
+	 * @param path the path
+	 * @return the class name of the metadata of path, or null
+	 */
+	public String getMetadataType( final String path )
+	{
+		final JsonObject entry = nodes.get( relativePath( path ) );
+		return entry == null || !entry.has( METADATA_TYPE_KEY ) ? null : entry.get( METADATA_TYPE_KEY ).getAsString();
+	}
+
+	/**
+	 * @param path the path
+	 * @return the indexed attributes of path, empty if it is not indexed
+	 */
+	public HashMap< String, JsonElement > getAttributes( final String path )
+	{
+		final HashMap< String, JsonElement > attributes = new HashMap<>();
+		final JsonObject entry = nodes.get( relativePath( path ) );
+		if ( entry != null && entry.has( ATTRIBUTES_KEY ) )
+			for ( final Map.Entry< String, JsonElement > e : entry.getAsJsonObject( ATTRIBUTES_KEY ).entrySet() )
+				attributes.put( e.getKey(), e.getValue() );
+
+		return attributes;
+	}
+
+	/**
+	 * @return a lister that gives the attributes key of every indexed node without reading the container
+	 */
+	public N5KeyLister lister()
+	{
+		return names -> {
+			final List< String > keys = new ArrayList<>();
+			if ( names.contains( "attributes.json" ) )
+				for ( final String path : nodes.keySet() )
+					keys.add( path.isEmpty() ? "attributes.json" : path + "/attributes.json" );
+
+			return keys;
+		};
+	}
+
+	private static String relativePath( final String path )
+	{
+		return N5DiscoveryCache.objectKey( path, null, null );
+	}
+
+	private static boolean isBelow( final String path, final String base )
+	{
+		return base.isEmpty() || path.equals( base ) || path.startsWith( base + "/" );
+	}
+
+	private static String parent( final String path )
+	{
+		if ( path.isEmpty() )
+			return null;
+
+		final int i = path.lastIndexOf( '/' );
+		return i < 0 ? "" : path.substring( 0, i );
+	}
+}
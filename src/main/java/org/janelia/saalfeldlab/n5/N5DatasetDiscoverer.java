@@ -28,22 +28,44 @@ package org.janelia.saalfeldlab.n5;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.text.Collator;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
+import org.janelia.saalfeldlab.n5.googlecloud.N5GoogleCloudStorageReader;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Reader;
+import org.janelia.saalfeldlab.n5.metadata.MetadataParserIndex;
+import org.janelia.saalfeldlab.n5.metadata.N5AttributeSnapshot;
 import org.janelia.saalfeldlab.n5.metadata.N5GroupParser;
 import org.janelia.saalfeldlab.n5.metadata.N5GsonMetadataParser;
 import org.janelia.saalfeldlab.n5.metadata.N5Metadata;
 import org.janelia.saalfeldlab.n5.metadata.N5MetadataParser;
+import org.janelia.saalfeldlab.n5.s3.N5AmazonS3Reader;
+import org.janelia.saalfeldlab.n5.zarr.N5ZarrReader;
 
 import com.google.gson.JsonElement;
 
@@ -51,8 +73,7 @@ import se.sawano.java.text.AlphanumericComparator;
 
 public class N5DatasetDiscoverer {
 
-    @SuppressWarnings( "rawtypes" )
-	private final N5MetadataParser[] metadataParsers;
+	private final MetadataParserIndex parserIndex;
 
 	private final N5GroupParser<?>[] groupParsers;
 
@@ -64,10 +85,31 @@ public class N5DatasetDiscoverer {
 
     private N5TreeNode root;
 
+    /**
+     * The number of concurrent requests used for cloud storage.
+     */
+    public static final int CLOUD_PARALLELISM = 32;
+
+    private int parallelism = 0;
+
+    private N5DiscoveryCache cache;
+
+    private N5DiscoveryFilter discoveryFilter;
+
+    private N5DiscoverySession session;
+
+    private boolean trustContainerIndex = false;
+
+    public static final int DEFAULT_MAX_CHILDREN_PER_NODE = 10000;
+
+    private int maxChildrenPerNode = DEFAULT_MAX_CHILDREN_PER_NODE;
+
+    private static final Predicate< String > BLOCK_NAME = Pattern.compile( "^\\d+(\\.\\d+)*$" ).asPredicate();
+
     /**
      * Creates an N5 discoverer with alphanumeric sorting order of groups/datasets (such as, s9 goes before s10).
      * 
-     * @param executor the executor
+     * @param executor the executor to discover on, or null
      * @param groupParsers group parsers
      * @param metadataParsers metadata parsers
      */
@@ -90,7 +132,7 @@ public class N5DatasetDiscoverer {
 	@SuppressWarnings( "rawtypes" )
 	public N5DatasetDiscoverer( final N5GroupParser[] groupParsers, final N5MetadataParser... metadataParsers )
     {
-        this( Executors.newSingleThreadExecutor(),
+        this( null,
               Optional.of( new AlphanumericComparator(Collator.getInstance())),
               null,
               groupParsers,
@@ -127,7 +169,11 @@ public class N5DatasetDiscoverer {
      * If the optional parameter {@code comparator} is specified, the groups and datasets
      * will be listed in the order determined by this comparator.
 	 * 
-	 * @param executor the executor
+	 * @param executor the executor that {@link #discoverAsync(N5Reader, N5TreeNode)}
+	 *        runs on, or null for a pool per discovery of {@link #getParallelism(N5Reader)} threads.
+	 *        Discovery tasks fork and join, so for executors other than a
+	 *        {@link ForkJoinPool} every discovery runs on its own pool with as
+	 *        many threads as a bounded {@link ThreadPoolExecutor} has
 	 * @param comparator optional string comparator 
 	 * @param filter the dataset filter
 	 * @param groupParsers group parsers
@@ -145,82 +191,974 @@ public class N5DatasetDiscoverer {
 		this.comparator = comparator.orElseGet( null );
 		this.filter = filter;
 		this.groupParsers = groupParsers;
-		this.metadataParsers = metadataParsers;
+		this.parserIndex = new MetadataParserIndex( metadataParsers );
     }
 
+	/**
+	 * Sets the maximum number of concurrent requests to the container made by
+	 * {@link #discoverRecursive(N5Reader, String)} and
+	 * {@link #discoverAsync(N5Reader, N5TreeNode)}.
+	 *
+	 * @param parallelism the maximum number of concurrent requests, 0 to use
+	 *        {@link #defaultParallelism(N5Reader)}
+	 */
+	public void setParallelism( final int parallelism )
+	{
+		this.parallelism = Math.max( 0, parallelism );
+	}
+
+	public int getParallelism( final N5Reader n5 )
+	{
+		return parallelism > 0 ? parallelism : defaultParallelism( n5 );
+	}
+
+	/**
+	 * The number of concurrent requests that suit a backend: one for HDF5
+	 * whose library is not concurrent, many for high latency cloud storage,
+	 * and one per processor otherwise.
+	 *
+	 * @param n5 the reader
+	 * @return the parallelism
+	 */
+	public static int defaultParallelism( final N5Reader n5 )
+	{
+		final N5Reader backend = N5CachingReader.unwrap( n5 );
+		if ( backend instanceof N5HDF5Reader )
+			return 1;
+		else if ( backend instanceof N5AmazonS3Reader || backend instanceof N5GoogleCloudStorageReader )
+			return CLOUD_PARALLELISM;
+		else
+			return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sets a persistent cache that {@link #discoverAsync(N5Reader, N5TreeNode)}
+	 * reads unchanged nodes from and stores discovered nodes in.  Call
+	 * {@link N5DiscoveryCache#save()} when discovery is done.
+	 *
+	 * @param cache the cache, may be null
+	 */
+	public void setCache( final N5DiscoveryCache cache )
+	{
+		this.cache = cache;
+	}
+
+	public N5DiscoveryCache getCache()
+	{
+		return cache;
+	}
+
+	/**
+	 * Sets a filter that limits which groups are listed and which nodes are
+	 * parsed during discovery, and which parsed nodes are kept.
+	 *
+	 * @param discoveryFilter the filter, may be null
+	 */
+	public void setDiscoveryFilter( final N5DiscoveryFilter discoveryFilter )
+	{
+		this.discoveryFilter = discoveryFilter;
+	}
+
+	public N5DiscoveryFilter getDiscoveryFilter()
+	{
+		return discoveryFilter;
+	}
+
+	/**
+	 * Whether to discover from a {@link N5ContainerIndex} without checking
+	 * that it is fresh.  Meant for containers on cloud storage, where
+	 * freshness can not be checked cheaply and the index is otherwise not
+	 * used; groups and datasets that were added without updating the index
+	 * are then missing.
+	 *
+	 * @param trustContainerIndex whether to use container indexes that may be stale
+	 */
+	public void setTrustContainerIndex( final boolean trustContainerIndex )
+	{
+		this.trustContainerIndex = trustContainerIndex;
+	}
+
+	public boolean isTrustContainerIndex()
+	{
+		return trustContainerIndex;
+	}
+
+	/**
+	 * Sets the session that discovery registers its threads and tasks with,
+	 * and checks for cancellation between requests to the container.
+	 * Cancelled discovery throws {@link CancellationException}, or completes
+	 * its future with it.
+	 *
+	 * @param session the session, may be null
+	 */
+	public void setSession( final N5DiscoverySession session )
+	{
+		this.session = session;
+	}
+
+	public N5DiscoverySession getSession()
+	{
+		return session;
+	}
+
+	private void checkCancelled()
+	{
+		if ( session != null )
+			session.checkCancelled();
+	}
+
+	private ExecutorService newCrawlExecutor( final N5Reader n5 )
+	{
+		final ExecutorService crawlExecutor = Executors.newFixedThreadPool( getParallelism( n5 ) );
+		return session == null ? crawlExecutor : session.register( crawlExecutor );
+	}
+
+	private boolean descend( final String path, final int depth )
+	{
+		return discoveryFilter == null || discoveryFilter.descend( path, depth );
+	}
+
+	private boolean parse( final String path, final int depth )
+	{
+		return discoveryFilter == null || discoveryFilter.parse( path, depth );
+	}
+
+	/*
+	 * Applies the filters to a parsed node.  Nodes that are not accepted
+	 * can not be opened and are trimmed unless they have children.
+	 */
+	private void filter( final N5TreeNode node )
+	{
+		if ( filter != null && !filter.test( node ) )
+			node.setMetadata( null );
+
+		if ( discoveryFilter != null && !discoveryFilter.accept( node ) )
+		{
+			node.setMetadata( null );
+			node.setIsDataset( false );
+		}
+	}
+
+	/**
+	 * Sets the maximum number of children of a node that are discovered.
+	 * Children are sorted and the ones beyond this number are ignored; nodes
+	 * that lost children are marked {@link N5TreeNode#isTruncated()}.
+	 *
+	 * @param maxChildrenPerNode the maximum number of children per node
+	 */
+	public void setMaxChildrenPerNode( final int maxChildrenPerNode )
+	{
+		this.maxChildrenPerNode = Math.max( 1, maxChildrenPerNode );
+	}
+
+	public int getMaxChildrenPerNode()
+	{
+		return maxChildrenPerNode;
+	}
+
+	/**
+	 * Lists the children of a group that discovery descends into.  Datasets
+	 * and block grids have none, so their chunks are not listed.
+	 *
+	 * @param n5 the reader
+	 * @param node the group
+	 * @param checkDataset whether the node still needs to be checked for being a dataset
+	 * @return the children
+	 * @throws IOException the exception
+	 */
+	private String[] listChildren( final N5Reader n5, final N5TreeNode node, final boolean checkDataset ) throws IOException
+	{
+		if ( checkDataset && n5.datasetExists( node.path ) )
+			return new String[ 0 ];
+
+		// once checked, the node is a group and its children are no blocks
+		String[] children = n5.list( node.path );
+		if ( !checkDataset && isBlockGrid( n5, node.path, children ) )
+			return new String[ 0 ];
+
+		if ( trimSlashes( node.path ).isEmpty() )
+			children = Arrays.stream( children ).filter( x -> !N5ContainerIndex.isIndexGroup( x ) ).toArray( String[]::new );
+
+		if ( children.length > maxChildrenPerNode )
+		{
+			// the same children every time, and the user can tell some are missing
+			Arrays.sort( children, comparator );
+			node.setTruncated( true );
+			return Arrays.copyOf( children, maxChildrenPerNode );
+		}
+
+		return children;
+	}
+
+	/**
+	 * Checks whether the children of a group are the blocks of a dataset: all
+	 * names are numeric (like "0" or "0.1.2"), and the group is a dataset.
+	 * Only datasets have blocks, so the children themselves are not read:
+	 * numbered groups or datasets below a group, such as time points or
+	 * OME-Zarr scale levels, are no block grids.  Read errors count as no
+	 * block grid, so that they do not hide a subtree.
+	 *
+	 * @param n5 the reader
+	 * @param path the path of the group
+	 * @param children the children of the group
+	 * @return true if the children are blocks
+	 */
+	public static boolean isBlockGrid( final N5Reader n5, final String path, final String[] children )
+	{
+		if ( children.length == 0 )
+			return false;
+
+		for ( final String child : children )
+			if ( !BLOCK_NAME.test( child ) )
+				return false;
+
+		try
+		{
+			return n5.datasetExists( path );
+		}
+		catch ( final Exception e )
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Discovers the container tree below base breadth first.  The children of
+	 * all nodes of one level are listed, checked, and later parsed
+	 * concurrently, at most {@link #getParallelism(N5Reader)} requests at a time.
+	 *
+	 * @param n5 the reader
+	 * @param base the base path
+	 * @return the root of the discovered tree
+	 * @throws IOException the exception
+	 */
 	public N5TreeNode discoverRecursive( final N5Reader n5, final String base ) throws IOException
     {
+		final ZarrConsolidatedMetadata consolidated = ZarrConsolidatedMetadata.read( n5 );
+		if ( consolidated != null )
+		{
+			root = discoverConsolidated( n5, new N5TreeNode( base, false ), consolidated );
+			return root;
+		}
+
+		final N5ContainerIndex index = N5ContainerIndex.read( n5 );
+		if ( index != null && ( trustContainerIndex || index.isFresh( n5 ) ) )
+		{
+			root = discoverIndexed( n5, new N5TreeNode( base, false ), index );
+			return root;
+		}
+
 		root = new N5TreeNode( base, n5.datasetExists( base ));
-		discover( n5, root );
-		parseMetadataRecursive( n5, root, metadataParsers, groupParsers );
-		trim( root );
+
+		final ExecutorService crawlExecutor = newCrawlExecutor( n5 );
+		try
+		{
+			final List< List< N5TreeNode > > levels = discoverBreadthFirst( n5, root, crawlExecutor );
+
+			// parse the deepest level first, group parsers look at the children's metadata
+			for ( int i = levels.size() - 1; i >= 0; i-- )
+			{
+				final int depth = i;
+				forEach( crawlExecutor, levels.get( i ), node -> {
+					if ( parse( node.path, depth ) )
+						parseMetadata( n5, node, parserIndex, groupParsers, attributes( n5, node ) );
+				});
+			}
+		}
+		finally
+		{
+			crawlExecutor.shutdown();
+		}
+
+		filterRecursive( root );
+		sortAndTrim( root, null );
 		return root;
     }
 
+	/**
+	 * Discovers the container tree below root from the keys of its metadata
+	 * objects.  One flat listing gives all groups and datasets that have
+	 * metadata, then their attributes are read and parsed concurrently, at
+	 * most {@link #getParallelism(N5Reader)} requests at a time.  Groups
+	 * without metadata objects are found only through their descendants.
+	 *
+	 * @param n5 the reader
+	 * @param root the root of the tree to discover, its path relative to the container
+	 * @param lister lists the metadata objects of the container
+	 * @return root
+	 * @throws IOException the exception
+	 */
+	public N5TreeNode discoverFromKeys( final N5Reader n5, final N5TreeNode root, final N5KeyLister lister ) throws IOException
+	{
+		return discoverFromKeys( n5, root, lister, node -> attributes( n5, node ) );
+	}
+
+	/**
+	 * Discovers a zarr container from its consolidated metadata, without
+	 * reading anything else.
+	 *
+	 * @param n5 the reader
+	 * @param root the root of the tree to discover, its path relative to the container
+	 * @param consolidated the consolidated metadata of the container
+	 * @return root
+	 * @throws IOException the exception
+	 */
+	public N5TreeNode discoverConsolidated( final N5Reader n5, final N5TreeNode root, final ZarrConsolidatedMetadata consolidated ) throws IOException
+	{
+		return discoverFromKeys( n5, root, consolidated.lister(), node -> consolidated.getAttributes( node.path ) );
+	}
+
+	/**
+	 * Discovers an n5 container from its {@link N5ContainerIndex}, without
+	 * reading anything else.
+	 *
+	 * @param n5 the reader
+	 * @param root the root of the tree to discover, its path relative to the container
+	 * @param index the index of the container
+	 * @return root
+	 * @throws IOException the exception
+	 */
+	public N5TreeNode discoverIndexed( final N5Reader n5, final N5TreeNode root, final N5ContainerIndex index ) throws IOException
+	{
+		return discoverFromKeys( n5, root, index.lister(), node -> index.getAttributes( node.path ) );
+	}
+
+	@FunctionalInterface
+	private static interface NodeAttributes
+	{
+		public HashMap< String, JsonElement > get( N5TreeNode node ) throws IOException;
+	}
+
+	private N5TreeNode discoverFromKeys( final N5Reader n5, final N5TreeNode root, final N5KeyLister lister,
+			final NodeAttributes nodeAttributes ) throws IOException
+	{
+		final String base = trimSlashes( root.path );
+		final HashMap< String, N5TreeNode > nodes = new HashMap<>();
+		final HashMap< N5TreeNode, List< String > > metadataFiles = new HashMap<>();
+		final HashMap< String, Boolean > descends = new HashMap<>();
+		nodes.put( "", root );
+
+		// build the tree skeleton from the keys
+		checkCancelled();
+		for ( final String key : lister.list( N5KeyLister.METADATA_FILES ) )
+		{
+			final int i = key.lastIndexOf( '/' );
+			final String dir = i < 0 ? "" : key.substring( 0, i );
+			if ( N5ContainerIndex.isIndexGroup( dir ) )
+				continue;
+
+			final String relative;
+			if ( base.isEmpty() )
+				relative = dir;
+			else if ( dir.equals( base ) )
+				relative = "";
+			else if ( dir.startsWith( base + "/" ) )
+				relative = dir.substring( base.length() + 1 );
+			else
+				continue;
+
+			if ( !reachable( base, relative, descends ) )
+				continue;
+
+			final N5TreeNode node = addPath( nodes, relative );
+			metadataFiles.computeIfAbsent( node, x -> new ArrayList<>() ).add( key.substring( i + 1 ) );
+		}
+
+		final List< List< N5TreeNode > > levels = new ArrayList<>();
+		for ( final N5TreeNode node : nodes.values() )
+		{
+			while ( levels.size() <= node.getLevel() )
+				levels.add( new ArrayList<>() );
+
+			levels.get( node.getLevel() ).add( node );
+		}
+
+		final ExecutorService crawlExecutor = newCrawlExecutor( n5 );
+		try
+		{
+			// parse the deepest level first, group parsers look at the children's metadata
+			for ( int i = levels.size() - 1; i >= 0; i-- )
+			{
+				final int depth = i;
+				forEach( crawlExecutor, levels.get( i ), node -> {
+					final List< String > files = parse( node.path, depth ) ? metadataFiles.get( node ) : null;
+					HashMap< String, JsonElement > jsonMap = null;
+					try
+					{
+						if ( files != null )
+							jsonMap = nodeAttributes.get( node );
+					}
+					catch ( final IOException e )
+					{
+						// the node is shown without metadata
+					}
+					node.setIsDataset( files != null && ( files.contains( ".zarray" )
+							|| ( jsonMap != null && jsonMap.containsKey( "dimensions" ) ) ) );
+
+					if ( files != null || !node.isLeaf() )
+						parseMetadata( n5, node, parserIndex, groupParsers, jsonMap == null ? new HashMap<>() : jsonMap );
+				});
+			}
+		}
+		finally
+		{
+			crawlExecutor.shutdown();
+		}
+
+		filterRecursive( root );
+		sortAndTrim( root, comparator );
+
+		return root;
+	}
+
+	/*
+	 * Whether the discovery filter descends into all groups above a node,
+	 * remembering the answer for every group.
+	 */
+	private boolean reachable( final String base, final String relative, final HashMap< String, Boolean > descends )
+	{
+		if ( discoveryFilter == null || relative.isEmpty() )
+			return true;
+
+		final String[] parts = relative.split( "/" );
+		String ancestor = base;
+		for ( int depth = 0; depth < parts.length; depth++ )
+		{
+			final int d = depth;
+			if ( !descends.computeIfAbsent( ancestor, x -> descend( x, d ) ) )
+				return false;
+
+			ancestor = ancestor.isEmpty() ? parts[ depth ] : ancestor + "/" + parts[ depth ];
+		}
+		return true;
+	}
+
+	private static N5TreeNode addPath( final HashMap< String, N5TreeNode > nodes, final String relativePath )
+	{
+		final N5TreeNode node = nodes.get( relativePath );
+		if ( node != null )
+			return node;
+
+		final int i = relativePath.lastIndexOf( '/' );
+		final N5TreeNode parent = addPath( nodes, i < 0 ? "" : relativePath.substring( 0, i ) );
+		final N5TreeNode child = new N5TreeNode( Paths.get( parent.path, relativePath.substring( i + 1 ) ).toString(), false );
+		parent.add( child );
+		nodes.put( relativePath, child );
+		return child;
+	}
+
+	private static String trimSlashes( final String path )
+	{
+		int start = 0;
+		int end = path.length();
+		while ( start < end && path.charAt( start ) == '/' )
+			start++;
+
+		while ( end > start && path.charAt( end - 1 ) == '/' )
+			end--;
+
+		return path.substring( start, end );
+	}
+
+	private List< List< N5TreeNode > > discoverBreadthFirst( final N5Reader n5, final N5TreeNode root, final ExecutorService crawlExecutor ) throws IOException
+	{
+		final List< List< N5TreeNode > > levels = new ArrayList<>();
+		List< N5TreeNode > level = Collections.singletonList( root );
+		while ( !level.isEmpty() )
+		{
+			levels.add( level );
+
+			// list the children of all groups of this level
+			final int depth = levels.size() - 1;
+			final List< N5TreeNode > groups = level.stream()
+					.filter( x -> !x.isDataset() && descend( x.path, depth ) )
+					.collect( Collectors.toList() );
+			forEach( crawlExecutor, groups, node -> {
+				for ( final String childGroup : listChildren( n5, node, false ) )
+					node.add( new N5TreeNode( Paths.get( node.path, childGroup ).toString(), false ) );
+			});
+
+			final List< N5TreeNode > children = new ArrayList<>();
+			for ( final N5TreeNode node : groups )
+				children.addAll( node.childrenList() );
+
+			// check which children are datasets
+			forEach( crawlExecutor, children, child -> child.setIsDataset( n5.datasetExists( child.path ) ) );
+
+			if ( comparator != null )
+				for ( final N5TreeNode node : groups )
+					sortChildren( node, comparator );
+
+			level = children;
+		}
+		return levels;
+	}
+
+	@FunctionalInterface
+	private static interface NodeTask
+	{
+		public void run( N5TreeNode node ) throws IOException;
+	}
+
+	/**
+	 * Runs a task for every node and waits for all of them to finish.
+	 */
+	private void forEach( final ExecutorService exec, final List< N5TreeNode > nodes, final NodeTask task ) throws IOException
+	{
+		checkCancelled();
+		final List< Future< ? > > futures = new ArrayList<>( nodes.size() );
+		for ( final N5TreeNode node : nodes )
+			futures.add( exec.submit( () -> {
+				checkCancelled();
+				task.run( node );
+				return null;
+			}));
+
+		try
+		{
+			for ( final Future< ? > f : futures )
+				f.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			futures.forEach( f -> f.cancel( true ) );
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			futures.forEach( f -> f.cancel( true ) );
+			if ( e.getCause() instanceof IOException )
+				throw ( IOException ) e.getCause();
+			else if ( e.getCause() instanceof CancellationException )
+				throw ( CancellationException ) e.getCause();
+			else
+				throw new IOException( e.getCause() );
+		}
+	}
+
 	public N5TreeNode parse( final N5Reader n5, final String dataset ) throws IOException
     {
 		final N5TreeNode node = new N5TreeNode( dataset, n5.datasetExists( dataset ));
-		parseMetadata( n5, node, metadataParsers, null );
+		parseMetadata( n5, node, parserIndex, null, attributes( n5, node ) );
 		return node;
     }
 
-	private LinkedBlockingQueue< Future< N5TreeNode > > parseJobFutures;
+	/**
+	 * Lists and parses the children of a node, one level only.  The children
+	 * are returned sorted and are not added to node, so that the caller can
+	 * attach them when it is safe to, for example on the event dispatch thread.
+	 * When called from a {@link ForkJoinPool} the children are parsed in
+	 * parallel.
+	 *
+	 * @param n5 the reader
+	 * @param node the node
+	 * @return the children
+	 * @throws IOException the exception
+	 */
+	public List< N5TreeNode > discoverChildren( final N5Reader n5, final N5TreeNode node ) throws IOException
+	{
+		checkCancelled();
+		final int depth = node.getLevel();
+		if ( node.isDataset() || !descend( node.path, depth ) )
+			return Collections.emptyList();
+
+		final List< N5TreeNode > children = new ArrayList<>();
+		for ( final String childGroup : listChildren( n5, node, node.getMetadata() == null ) )
+			children.add( new N5TreeNode( Paths.get( node.path, childGroup ).toString(), false ) );
 
+		final List< ForkJoinTask< ? > > tasks = new ArrayList<>( children.size() );
+		for ( final N5TreeNode child : children )
+			if ( parse( child.path, depth + 1 ) )
+				tasks.add( ForkJoinTask.adapt( () -> {
+					checkCancelled();
+					try
+					{
+						parseMetadata( n5, child, parserIndex, null, attributes( n5, child ) );
+					}
+					catch ( final IOException e )
+					{
+						// the child is shown without metadata
+					}
+				}));
+
+		if ( ForkJoinTask.inForkJoinPool() )
+			ForkJoinTask.invokeAll( tasks );
+		else
+			tasks.forEach( ForkJoinTask::invoke );
+
+		// datasets the filter rejects will not get children that keep them
+		if ( discoveryFilter != null )
+			children.removeIf( x -> x.isDataset() && !discoveryFilter.accept( x ) );
+
+		return sorted( children, comparator );
+	}
+
+	/**
+	 * Receives the nodes of a tree while {@link #discoverAsync(N5Reader,
+	 * N5TreeNode, DiscoveryListener)} discovers it.  The methods are called on
+	 * the discovery threads.
+	 */
+	public static interface DiscoveryListener
+	{
+		/**
+		 * Called once node is parsed, before any of its children.  The node is
+		 * not added to parent, the listener is responsible for that.
+		 *
+		 * @param parent the parent, null for the root of the discovery
+		 * @param node the node
+		 */
+		public void discovered( N5TreeNode parent, N5TreeNode node );
+
+		/**
+		 * Called once all descendants of node are discovered, after
+		 * {@link #completed(N5TreeNode)} was called for all its children.
+		 *
+		 * @param node the node
+		 */
+		public void completed( N5TreeNode node );
+	}
+
+	/**
+	 * Discovers and parses the tree below node in the background.  Every node is
+	 * a task on a {@link ForkJoinPool} limited to {@link #getParallelism(N5Reader)}
+	 * threads (or on the executor of this discoverer if it is a
+	 * {@link ForkJoinPool}, or on a pool of its size otherwise), so the number
+	 * of threads does not grow with the width of the container.  The
+	 * returned future completes when all nodes are done.
+	 *
+	 * @param n5 the reader
+	 * @param node the root of the tree to discover
+	 * @return a future that completes with node when the tree is discovered
+	 */
+	public Future< N5TreeNode > discoverAsync( final N5Reader n5, final N5TreeNode node )
+	{
+		return discoverAsync( n5, node, null );
+	}
+
+	/**
+	 * Discovers and parses the tree below node in the background.
+	 *
+	 * @param n5 the reader
+	 * @param node the root of the tree to discover
+	 * @return a queue with a single future that completes with node when the tree is discovered
+	 * @throws IOException never, kept for existing callers
+	 * @deprecated the queue holds one future, use {@link #discoverAsync(N5Reader, N5TreeNode)}
+	 */
+	@Deprecated
 	public LinkedBlockingQueue< Future< N5TreeNode > > discoverThreads( final N5Reader n5, final N5TreeNode node ) throws IOException
 	{
-		parseJobFutures = new LinkedBlockingQueue<>();
-		discoverThreadsHelper( n5, node );
-		return parseJobFutures;
+		final LinkedBlockingQueue< Future< N5TreeNode > > futures = new LinkedBlockingQueue<>();
+		futures.add( discoverAsync( n5, node ) );
+		return futures;
 	}
 
-	private N5TreeNode discoverThreadsHelper( final N5Reader n5, final N5TreeNode node ) throws IOException
+	/**
+	 * Discovers and parses the tree below node in the background, passing every
+	 * node to a listener as soon as it is parsed, so that the tree can be shown
+	 * while it is discovered.  If a listener is given, children are not added to
+	 * their parents; the listener can do this with {@link #addSorted(N5TreeNode,
+	 * N5TreeNode)} and finish subtrees with {@link #finishNode(N5TreeNode)}.
+	 *
+	 * @param n5 the reader
+	 * @param node the root of the tree to discover
+	 * @param listener the listener, may be null
+	 * @return a future that completes with node when the tree is discovered
+	 */
+	public Future< N5TreeNode > discoverAsync( final N5Reader n5, final N5TreeNode node, final DiscoveryListener listener )
 	{
-		parseJobFutures.add( executor.submit( new Callable< N5TreeNode >()
+		node.setExplored( false );
+
+		// zarr containers may have consolidated metadata, n5 containers an index
+		final ForkJoinTask< N5TreeNode > task = n5 instanceof AbstractGsonReader
+				? ForkJoinTask.adapt( () -> discoverFromIndex( n5, node, listener ) )
+				: new DiscoverTask( null, n5, null, node, 0, listener );
+		if ( session != null )
+			session.register( task );
+
+		if ( executor instanceof ForkJoinPool )
+			( ( ForkJoinPool ) executor ).execute( task );
+		else
 		{
-			@Override
-			public N5TreeNode call() throws Exception
+			final ForkJoinPool pool = new ForkJoinPool( poolSize( n5 ) );
+			if ( session != null )
+				session.register( pool );
+
+			pool.execute( task );
+
+			// lets the running tasks finish, then the pool's threads exit
+			pool.shutdown();
+		}
+		return task;
+	}
+
+	/*
+	 * The number of threads of the pool that discovery runs on if the executor
+	 * of this discoverer is not a ForkJoinPool: the size of a bounded thread
+	 * pool executor, the parallelism for the reader otherwise.
+	 */
+	private int poolSize( final N5Reader n5 )
+	{
+		if ( executor instanceof ThreadPoolExecutor )
+		{
+			final int maxPoolSize = ( ( ThreadPoolExecutor ) executor ).getMaximumPoolSize();
+			if ( maxPoolSize < Integer.MAX_VALUE )
+				return maxPoolSize;
+		}
+		return getParallelism( n5 );
+	}
+
+	/**
+	 * Discovers the tree below node for at most budgetMillis milliseconds.  If
+	 * discovery does not finish in time, the tree discovered so far is returned
+	 * with the nodes that are not fully discovered marked as not explored (see
+	 * {@link N5TreeNode#isExplored()}), and discovery goes on in the background.
+	 *
+	 * @param n5 the reader
+	 * @param node the root of the tree to discover
+	 * @param budgetMillis the time budget in milliseconds
+	 * @return the parsed, filtered, sorted and trimmed tree
+	 * @throws IOException the exception
+	 * @see #partialTree(Future, N5TreeNode, long)
+	 */
+	public N5TreeNode discoverWithin( final N5Reader n5, final N5TreeNode node, final long budgetMillis ) throws IOException
+	{
+		return partialTree( discoverAsync( n5, node ), node, budgetMillis );
+	}
+
+	/**
+	 * Waits at most budgetMillis milliseconds for a discovery started with
+	 * {@link #discoverAsync(N5Reader, N5TreeNode)}.  Returns node, finished
+	 * like {@link #discoverRecursive(N5Reader, String)} does, if discovery
+	 * completes in time, and a finished copy of the tree discovered so far
+	 * otherwise; nodes that are not explored yet are kept in the copy.
+	 * Discovery is not cancelled: the future still completes with the full
+	 * tree, and fills the cache of this discoverer if it has one.
+	 *
+	 * @param future the discovery
+	 * @param node the root of the discovered tree
+	 * @param budgetMillis the time budget in milliseconds
+	 * @return the complete or partial tree
+	 * @throws IOException the exception
+	 */
+	public N5TreeNode partialTree( final Future< N5TreeNode > future, final N5TreeNode node, final long budgetMillis ) throws IOException
+	{
+		N5TreeNode tree;
+		try
+		{
+			tree = future.get( budgetMillis, TimeUnit.MILLISECONDS );
+		}
+		catch ( final TimeoutException e )
+		{
+			tree = snapshot( node );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new IOException( e.getCause() );
+		}
+
+		parseGroupsRecursive( tree );
+		filterRecursive( tree );
+		sortAndTrim( tree, comparator );
+		return tree;
+	}
+
+	/*
+	 * Copies a tree that DiscoverTasks may still add children to.
+	 */
+	private static N5TreeNode snapshot( final N5TreeNode node )
+	{
+		final N5TreeNode copy = new N5TreeNode( node.path, node.isDataset() );
+		copy.setExplored( node.isExplored() );
+		copy.setTruncated( node.isTruncated() );
+		copy.setMetadata( node.getMetadata() );
+
+		final List< N5TreeNode > children;
+		synchronized ( node )
+		{
+			children = node.childrenList();
+		}
+		for ( final N5TreeNode child : children )
+			copy.add( snapshot( child ) );
+
+		return copy;
+	}
+
+	private N5TreeNode discoverFromIndex( final N5Reader n5, final N5TreeNode node, final DiscoveryListener listener ) throws IOException
+	{
+		final ZarrConsolidatedMetadata consolidated = N5CachingReader.unwrap( n5 ) instanceof N5ZarrReader ? ZarrConsolidatedMetadata.read( n5 ) : null;
+		final N5ContainerIndex index = consolidated == null ? N5ContainerIndex.read( n5 ) : null;
+		if ( consolidated != null )
+			discoverConsolidated( n5, node, consolidated );
+		else if ( index != null && ( trustContainerIndex || index.isFresh( n5 ) ) )
+			discoverIndexed( n5, node, index );
+		else
+			return new DiscoverTask( null, n5, null, node, 0, listener ).invoke();
+
+		node.setExplored( true );
+		if ( listener != null )
+			replay( null, node, listener );
+
+		return node;
+	}
+
+	/*
+	 * Passes a discovered tree to a listener in the order discoverAsync
+	 * would, detaching the children that the listener attaches again.
+	 */
+	private static void replay( final N5TreeNode parent, final N5TreeNode node, final DiscoveryListener listener )
+	{
+		final List< N5TreeNode > children = node.childrenList();
+		node.removeAllChildren();
+		listener.discovered( parent, node );
+		for ( final N5TreeNode child : children )
+			replay( node, child, listener );
+
+		listener.completed( node );
+	}
+
+	/**
+	 * Parses one node, then adds its children and forks one task per child.
+	 * Completes when all descendants have completed.
+	 */
+	private class DiscoverTask extends CountedCompleter< N5TreeNode >
+	{
+		private static final long serialVersionUID = 2207541880283640424L;
+
+		private final N5Reader n5;
+
+		private final N5TreeNode parentNode;
+
+		private final N5TreeNode node;
+
+		private final int depth;
+
+		private final DiscoveryListener listener;
+
+		public DiscoverTask( final CountedCompleter< ? > parent, final N5Reader n5,
+				final N5TreeNode parentNode, final N5TreeNode node, final int depth, final DiscoveryListener listener )
+		{
+			super( parent );
+			this.n5 = n5;
+			this.parentNode = parentNode;
+			this.node = node;
+			this.depth = depth;
+			this.listener = listener;
+			node.setExplored( false );
+		}
+
+		@Override
+		public void compute()
+		{
+			checkCancelled();
+			String[] children = new String[ 0 ];
+			try
 			{
-				parseMetadata( n5, node, metadataParsers, null );
-				if ( node.isDataset() )
+				final boolean parse = parse( node.path, depth );
+				final boolean descend = descend( node.path, depth );
+
+				// the cache holds fully discovered nodes only
+				final N5DiscoveryCache.Entry entry = cache == null || !parse || !descend ? null : cache.lookup( node.path );
+				if ( entry != null && entry.isValid() )
 				{
-					return node;
+					if ( n5 instanceof AbstractGsonReader )
+						parseMetadata( n5, node, parserIndex, null, entry.getAttributes() );
+					else
+						parseMetadata( n5, node, parserIndex, null, null );
+
+					// children are not cached for cloud storage
+					if ( node.isDataset() )
+						children = new String[ 0 ];
+					else if ( entry.getChildren() != null )
+						children = entry.getChildren();
+					else
+						children = listChildren( n5, node, true );
 				}
 				else
 				{
-					final String[] children = n5.list( node.path );
-					for ( final String childGroup : children )
+					final HashMap< String, JsonElement > jsonMap = parse ? attributes( n5, node ) : null;
+					if ( parse )
+						parseMetadata( n5, node, parserIndex, null, jsonMap );
+
+					checkCancelled();
+					children = node.isDataset() || !descend ? new String[ 0 ] : listChildren( n5, node, true );
+
+					// truncated nodes are listed again, to keep their mark
+					if ( entry != null && !node.isTruncated() )
 					{
-						// add the node
-						final String childPath = Paths.get( node.path, childGroup ).toString();
-						final N5TreeNode childNode = new N5TreeNode( childPath, false );
-						node.add( childNode );
+						entry.set( node.isDataset(), children, jsonMap );
+						cache.put( node.path, entry );
+					}
+				}
+			}
+			catch ( final CancellationException e )
+			{
+				throw e;
+			}
+			catch ( final Exception e )
+			{
+				// keep discovering the rest of the container
+				e.printStackTrace();
+			}
 
-						// parse recursively
-						parseJobFutures.add( executor.submit( new Callable< N5TreeNode >()
-						{
-							@Override
-							public N5TreeNode call() throws Exception
-							{
-								return discoverThreadsHelper( n5, childNode );
-							}
-						}));
+			if ( listener != null )
+				listener.discovered( parentNode, node );
 
+			if ( children.length > 0 )
+			{
+				final List< N5TreeNode > childNodes = new ArrayList<>( children.length );
+				for ( final String childGroup : children )
+				{
+					final N5TreeNode childNode = new N5TreeNode( Paths.get( node.path, childGroup ).toString(), false );
+					childNode.setExplored( false );
+					if ( listener == null )
+					{
+						// partialTree may copy the tree meanwhile
+						synchronized ( node )
+						{
+							node.add( childNode );
+						}
 					}
-					return node;
+
+					childNodes.add( childNode );
 				}
+
+				addToPendingCount( childNodes.size() );
+				for ( final N5TreeNode childNode : childNodes )
+					new DiscoverTask( this, n5, node, childNode, depth + 1, listener ).fork();
 			}
-		}));
-		return node;
+			tryComplete();
+		}
+
+		@Override
+		public void onCompletion( final CountedCompleter< ? > caller )
+		{
+			node.setExplored( true );
+			if ( listener != null )
+				listener.completed( node );
+		}
+
+		@Override
+		public N5TreeNode getRawResult()
+		{
+			return node;
+		}
 	}
 
+	/**
+	 * Removes the nodes below node that can not be opened, and sorts the
+	 * children of every remaining node with the comparator of this discoverer.
+	 *
+	 * @param node the root of the tree
+	 */
 	public void sortAndTrimRecursive( final N5TreeNode node )
 	{
-		trim( node );
-		if ( comparator != null )
-			sort( node, comparator );
-
-		for ( final N5TreeNode c : node.childrenList() )
-			sortAndTrimRecursive( c );
+		sortAndTrim( node, comparator );
 	}
 
 	public void parseGroupsRecursive( final N5TreeNode node )
@@ -228,67 +1166,168 @@ public class N5DatasetDiscoverer {
 		if ( groupParsers == null )
 			return;
 
-		if ( node.getMetadata() == null )
+		parseGroups( node );
+		for ( final N5TreeNode c : node.childrenList() )
+			parseGroupsRecursive( c );
+	}
+
+	private void parseGroups( final N5TreeNode node )
+	{
+		if ( groupParsers == null || node.getMetadata() != null )
+			return;
+
+		// this is not a dataset but may be a group (e.g. multiscale pyramid)
+		// try to parse groups
+		for ( final N5GroupParser< ? > gp : groupParsers )
 		{
-			// this is not a dataset but may be a group (e.g. multiscale pyramid)
-			// try to parse groups
-			for ( final N5GroupParser< ? > gp : groupParsers )
+			final N5Metadata groupMeta = gp.parseMetadataGroup( node );
+			if ( groupMeta != null )
+				node.setMetadata( groupMeta );
+		}
+	}
+
+	/**
+	 * Adds child to node at the position given by the comparator of this
+	 * discoverer, after the last child it does not sort before.
+	 *
+	 * @param node the parent
+	 * @param child the child to add
+	 * @return the index of child
+	 */
+	public int addSorted( final N5TreeNode node, final N5TreeNode child )
+	{
+		int lo = 0;
+		int hi = node.getChildCount();
+		if ( comparator != null )
+		{
+			final String name = child.toString();
+			while ( lo < hi )
 			{
-				final N5Metadata groupMeta = gp.parseMetadataGroup( node );
-				if ( groupMeta != null )
-					node.setMetadata( groupMeta );
+				final int mid = ( lo + hi ) >>> 1;
+				if ( comparator.compare( node.getChildAt( mid ).toString(), name ) <= 0 )
+					lo = mid + 1;
+				else
+					hi = mid;
 			}
 		}
+		else
+			lo = hi;
 
-		for ( final N5TreeNode c : node.childrenList() )
-			parseGroupsRecursive( c );
+		node.insert( child, lo );
+		return lo;
 	}
 
+	/**
+	 * Does for one node what {@link #sortAndTrimRecursive(N5TreeNode)},
+	 * {@link #parseGroupsRecursive(N5TreeNode)} and
+	 * {@link #filterRecursive(N5TreeNode)} do for a tree, once the subtree of
+	 * node is discovered and its children are finished: parses group metadata,
+	 * applies the filter, and tells whether node should stay in the tree.
+	 *
+	 * @param node the node
+	 * @return true if node or one of its remaining children can be opened
+	 */
+	public boolean finishNode( final N5TreeNode node )
+	{
+		parseGroups( node );
+		filter( node );
+		return node.getChildCount() > 0 || node.isDataset() || node.getMetadata() != null;
+	}
+
+	/**
+	 * Applies the dataset filter and the {@link #setDiscoveryFilter(N5DiscoveryFilter)
+	 * discovery filter} to every node of a tree.
+	 *
+	 * @param node the root of the tree
+	 */
 	public void filterRecursive( final N5TreeNode node )
 	{
-		if( filter == null )
+		if( filter == null && discoveryFilter == null )
 			return;
 
-		if( !filter.test( node ))
-			node.setMetadata( null );
-
+		filter( node );
 		for ( final N5TreeNode c : node.childrenList() )
 			filterRecursive( c );
 	}
 
-    private void discover(final N5Reader n5, final N5TreeNode node) throws IOException
-    {
-        if( !node.isDataset() )
-        {
-			for ( final String childGroup : n5.list( node.path ) )
-			{
-				final String childPath = Paths.get( node.path, childGroup ).toString();
-				final N5TreeNode childNode = new N5TreeNode( childPath, n5.datasetExists( childPath ) );
-				node.add( childNode );
-				discover( n5, childNode );
-            }
-			if ( comparator != null )
-				sort( node, comparator );
-        }
-    }
-
 	public static void parseMetadata(final N5Reader n5, final N5TreeNode node,
 			final N5MetadataParser< ? >[] metadataParsers,
 			final N5GroupParser< ? >[] groupParsers ) throws IOException
 	{
-		HashMap< String, JsonElement > jsonMap = null;
+		parseMetadata( n5, node, metadataParsers, groupParsers, attributes( n5, node ) );
+	}
+
+	/**
+	 * @return the attributes of node if n5 is an {@link AbstractGsonReader}, otherwise null
+	 */
+	private static HashMap< String, JsonElement > attributes( final N5Reader n5, final N5TreeNode node ) throws IOException
+	{
 		if ( n5 instanceof AbstractGsonReader )
+			return ( ( AbstractGsonReader ) n5 ).getAttributes( node.path );
+
+		return null;
+	}
+
+	/**
+	 * Parses the metadata of a node with attributes that were already read.
+	 *
+	 * @param n5 the reader
+	 * @param node the node
+	 * @param metadataParsers the metadata parsers
+	 * @param groupParsers the group parsers
+	 * @param jsonMap the attributes of the node, ignored unless n5 is an {@link AbstractGsonReader}
+	 * @throws IOException the exception
+	 */
+	public static void parseMetadata(final N5Reader n5, final N5TreeNode node,
+			final N5MetadataParser< ? >[] metadataParsers,
+			final N5GroupParser< ? >[] groupParsers,
+			final HashMap< String, JsonElement > jsonMap ) throws IOException
+	{
+		parseMetadata( n5, node, new MetadataParserIndex( metadataParsers ), groupParsers, jsonMap );
+	}
+
+	/**
+	 * Parses the metadata of a node, trying only the parsers whose keys the
+	 * node has.
+	 *
+	 * @param n5 the reader
+	 * @param node the node
+	 * @param parserIndex the metadata parsers
+	 * @param groupParsers the group parsers
+	 * @param jsonMap the attributes of the node, ignored unless n5 is an {@link AbstractGsonReader}
+	 * @throws IOException the exception
+	 */
+	public static void parseMetadata(final N5Reader n5, final N5TreeNode node,
+			final MetadataParserIndex parserIndex,
+			final N5GroupParser< ? >[] groupParsers,
+			final HashMap< String, JsonElement > jsonMap ) throws IOException
+	{
+		if ( n5 instanceof AbstractGsonReader && jsonMap == null )
 		{
-			jsonMap = ( ( AbstractGsonReader ) n5 ).getAttributes( node.path );
-			if( jsonMap == null )
+			node.setIsDataset( false );
+			return;
+		}
+
+		// other readers get the attributes once for all parsers
+		N5AttributeSnapshot snapshot = null;
+		List< N5MetadataParser< ? > > candidates;
+		if ( n5 instanceof AbstractGsonReader )
+			candidates = parserIndex.candidates( jsonMap.keySet() );
+		else
+		{
+			try
 			{
-				node.setIsDataset( false );
-				return;
+				snapshot = N5AttributeSnapshot.read( n5, node.path );
+				candidates = parserIndex.candidates( snapshot.getKeys() );
+			}
+			catch ( final Exception e )
+			{
+				candidates = Arrays.asList( parserIndex.getParsers() );
 			}
 		}
 
-        // Go through all parsers to populate metadata
-		for ( final N5MetadataParser< ? > parser : metadataParsers )
+        // Go through the candidate parsers to populate metadata
+		for ( final N5MetadataParser< ? > parser : candidates )
         {
         	try
         	{
@@ -297,6 +1336,8 @@ public class N5DatasetDiscoverer {
 				{
 					parsedMeta = ( ( N5GsonMetadataParser< ? > ) parser ).parseMetadataGson( node.path, jsonMap );
 				}
+				else if ( snapshot != null )
+					parsedMeta = parser.parseMetadata( snapshot );
 				else
 					parsedMeta = parser.parseMetadata( n5, node );
 
@@ -335,48 +1376,84 @@ public class N5DatasetDiscoverer {
         parseMetadata( n5, node, metadataParsers, groupParsers );
     }
 
-    /**
-     * Removes branches of the N5 container tree that do not contain any nodes that can be opened
-     * (nodes with metadata).
-     *
-     * @param node the node
-     * @return
-     *      {@code true} if the branch contains a node that can be opened, {@code false} otherwise
-     */
-    private static boolean trim(final N5TreeNode node)
-    {
-		final List< N5TreeNode > children = node.childrenList();
-		if ( children.isEmpty() )
+	/**
+	 * Removes the nodes below node that can not be opened: datasets, groups
+	 * with metadata or with remaining children, and nodes that are not
+	 * explored yet stay.  The children of the remaining nodes are sorted if
+	 * comparator is not null.  Every node is visited once, after its
+	 * children, and its name is computed once.
+	 *
+	 * @param node the root of the tree
+	 * @param comparator the order of children, may be null
+	 * @return true if node can be opened
+	 */
+	private static boolean sortAndTrim( final N5TreeNode node, final Comparator< ? super String > comparator )
+	{
+		// children come after their parents, visit them in reverse
+		// without recursion so that deep trees do not overflow the stack
+		final ArrayList< N5TreeNode > preOrder = new ArrayList<>();
+		final ArrayDeque< N5TreeNode > stack = new ArrayDeque<>();
+		stack.push( node );
+		while ( !stack.isEmpty() )
 		{
-			//return node.getMetadata() != null;
-			return node.isDataset();
+			final N5TreeNode n = stack.pop();
+			preOrder.add( n );
+			for ( int i = 0; i < n.getChildCount(); i++ )
+				stack.push( ( N5TreeNode ) n.getChildAt( i ) );
 		}
 
-        boolean ret = false;
-        for (final Iterator<N5TreeNode> it = children.iterator(); it.hasNext();)
-        {
-            final N5TreeNode childNode = it.next();
-			if ( !trim( childNode ))
+		final Set< N5TreeNode > trimmed = Collections.newSetFromMap( new IdentityHashMap<>() );
+		for ( int i = preOrder.size() - 1; i >= 0; i-- )
+		{
+			final N5TreeNode n = preOrder.get( i );
+			// nodes that are not explored yet may still get children
+			if ( n.isLeaf() )
 			{
-				node.remove( childNode );
+				if ( !n.isDataset() && n.isExplored() )
+					trimmed.add( n );
+
+				continue;
 			}
-            else
-                ret = true;
-        }
-        return ret || node.getMetadata() != null;
-    }
 
-    private static void sort(final N5TreeNode node, final Comparator<? super String> comparator)
-    {
-		final List< N5TreeNode > children = node.childrenList();
-		children.sort( Comparator.comparing( N5TreeNode::toString, comparator ) );
+			final List< N5TreeNode > children = n.childrenList();
+			final List< N5TreeNode > kept = trimmed.isEmpty() ? children
+					: children.stream().filter( x -> !trimmed.contains( x ) ).collect( Collectors.toList() );
+
+			if ( kept.size() != children.size() || comparator != null )
+				setChildren( n, sorted( kept, comparator ) );
+
+			if ( kept.isEmpty() && n.getMetadata() == null && n.isExplored() )
+				trimmed.add( n );
+		}
+		return !trimmed.contains( node );
+	}
 
+	private static void sortChildren( final N5TreeNode node, final Comparator< ? super String > comparator )
+	{
+		setChildren( node, sorted( node.childrenList(), comparator ) );
+	}
+
+	/*
+	 * Sorts nodes by name, computing every name once rather than once per comparison.
+	 */
+	private static List< N5TreeNode > sorted( final List< N5TreeNode > nodes, final Comparator< ? super String > comparator )
+	{
+		if ( comparator == null || nodes.size() < 2 )
+			return nodes;
+
+		final List< SimpleImmutableEntry< String, N5TreeNode > > keyed = new ArrayList<>( nodes.size() );
+		for ( final N5TreeNode n : nodes )
+			keyed.add( new SimpleImmutableEntry<>( n.toString(), n ) );
+
+		keyed.sort( Map.Entry.comparingByKey( comparator ) );
+		return keyed.stream().map( Map.Entry::getValue ).collect( Collectors.toList() );
+	}
+
+	private static void setChildren( final N5TreeNode node, final List< N5TreeNode > children )
+	{
 		// add back the children in order
 		// necessary because the collection of children can't be sorted in place
 		node.removeAllChildren();
-		children.stream().forEach( x -> node.add( x ) );
-
-		for ( final N5TreeNode childNode : children )
-			sort( childNode, comparator );
-    }
+		children.forEach( node::add );
+	}
 }
@@ -0,0 +1,462 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.janelia.saalfeldlab.googlecloud.GoogleCloudStorageURI;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessException;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessFactory;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessType;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Reader;
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.zarr.N5ZarrReader;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3URI;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+
+/**
+ * A persistent index of the results of dataset discovery for one container,
+ * stored in the user's home directory and keyed by the container's URI.
+ * <p>
+ * Every node stores its children, whether it is a dataset, its raw attributes,
+ * and a version token from a {@link ChangeDetector} (modification times for
+ * file systems, ETags for cloud storage).  A cached node is used only if its
+ * version is unchanged, which costs one cheap request (a stat or a HEAD)
+ * instead of a listing and an attribute read.
+ * <p>
+ * The ETag of an attributes object does not change when children are added
+ * or removed, so for cloud storage the children are not cached (see
+ * {@link #setCacheChildren(boolean)}) and nodes are listed every time.
+ */
+public class N5DiscoveryCache
+{
+	public static final String DEFAULT_CACHE_DIRECTORY = System.getProperty( "user.home" ) + File.separator + ".n5-ij" + File.separator + "discovery";
+
+	/**
+	 * Computes a version token for a node of a container.  The token must
+	 * change when the node's attributes change, and when its children change
+	 * if the cache stores children.
+	 */
+	@FunctionalInterface
+	public static interface ChangeDetector
+	{
+		/**
+		 * @param path the node path
+		 * @return the version, or null if unknown (the node is not cached)
+		 */
+		public String version( String path );
+	}
+
+	/**
+	 * The cached state of one node.
+	 */
+	public static class Entry
+	{
+		private final String version;
+
+		private final long time;
+
+		private boolean dataset;
+
+		private String[] children;
+
+		private HashMap< String, JsonElement > attributes;
+
+		private transient boolean valid;
+
+		Entry( final String version )
+		{
+			this.version = version;
+			this.time = System.currentTimeMillis();
+		}
+
+		/**
+		 * @return true if this entry was read from the cache and is up to date
+		 */
+		public boolean isValid()
+		{
+			return valid;
+		}
+
+		public boolean isDataset()
+		{
+			return dataset;
+		}
+
+		public String[] getChildren()
+		{
+			return children;
+		}
+
+		public HashMap< String, JsonElement > getAttributes()
+		{
+			return attributes;
+		}
+
+		public void set( final boolean dataset, final String[] children, final HashMap< String, JsonElement > attributes )
+		{
+			this.dataset = dataset;
+			this.children = children;
+			this.attributes = attributes;
+		}
+	}
+
+	private static final Gson gson = new GsonBuilder().create();
+
+	private final String containerUri;
+
+	private final ChangeDetector changeDetector;
+
+	private final File file;
+
+	private long maxAgeMillis = Long.MAX_VALUE;
+
+	private boolean cacheChildren = true;
+
+	private final ConcurrentHashMap< String, Entry > entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a cache for a container stored in {@link #DEFAULT_CACHE_DIRECTORY},
+	 * and loads its entries if the cache file exists.
+	 *
+	 * @param containerUri the container URI or path
+	 * @param changeDetector the change detector
+	 */
+	public N5DiscoveryCache( final String containerUri, final ChangeDetector changeDetector )
+	{
+		this( containerUri, changeDetector, new File( DEFAULT_CACHE_DIRECTORY ) );
+	}
+
+	public N5DiscoveryCache( final String containerUri, final ChangeDetector changeDetector, final File directory )
+	{
+		this.containerUri = containerUri;
+		this.changeDetector = changeDetector;
+		this.file = new File( directory,
+				UUID.nameUUIDFromBytes( containerUri.getBytes( StandardCharsets.UTF_8 ) ).toString() + ".json" );
+		load();
+	}
+
+	/**
+	 * Entries older than this are not used, whatever their version.
+	 *
+	 * @param maxAgeMillis the maximum age of an entry in milliseconds
+	 */
+	public void setMaxAge( final long maxAgeMillis )
+	{
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * Sets whether the children of nodes are cached.  Turn this off for
+	 * change detectors whose versions do not change when children are added
+	 * or removed; the children of cached nodes are then listed again.
+	 *
+	 * @param cacheChildren whether children are cached
+	 */
+	public void setCacheChildren( final boolean cacheChildren )
+	{
+		this.cacheChildren = cacheChildren;
+	}
+
+	public boolean isCacheChildren()
+	{
+		return cacheChildren;
+	}
+
+	public String getContainerUri()
+	{
+		return containerUri;
+	}
+
+	/**
+	 * Returns the cached entry for a node if it is up to date, otherwise a new
+	 * entry with the current version that can be filled and passed to
+	 * {@link #put(String, Entry)}.
+	 *
+	 * @param path the node path
+	 * @return the entry
+	 */
+	public Entry lookup( final String path )
+	{
+		final String version = changeDetector.version( path );
+		final Entry entry = entries.get( path );
+		if ( version != null && entry != null && version.equals( entry.version ) &&
+				System.currentTimeMillis() - entry.time < maxAgeMillis )
+		{
+			entry.valid = true;
+			return entry;
+		}
+		return new Entry( version );
+	}
+
+	public void put( final String path, final Entry entry )
+	{
+		if ( entry.version == null )
+			return;
+
+		if ( !cacheChildren )
+			entry.children = null;
+
+		entries.put( path, entry );
+	}
+
+	public void clear()
+	{
+		entries.clear();
+	}
+
+	/**
+	 * Writes the cache file.
+	 *
+	 * @throws IOException the exception
+	 */
+	public void save() throws IOException
+	{
+		final Path dir = file.getParentFile().toPath();
+		Files.createDirectories( dir );
+
+		final HashMap< String, Object > content = new HashMap<>();
+		content.put( "uri", containerUri );
+		content.put( "nodes", new HashMap<>( entries ) );
+
+		final Path tmp = Files.createTempFile( dir, file.getName(), ".tmp" );
+		try ( final Writer writer = Files.newBufferedWriter( tmp, StandardCharsets.UTF_8 ) )
+		{
+			gson.toJson( content, writer );
+		}
+		Files.move( tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	private void load()
+	{
+		if ( !file.isFile() )
+			return;
+
+		try ( final Reader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ) )
+		{
+			final CacheFile content = gson.fromJson( reader, CacheFile.class );
+			if ( content != null && containerUri.equals( content.uri ) && content.nodes != null )
+				entries.putAll( content.nodes );
+		}
+		catch ( final Exception e )
+		{
+			// an unreadable cache is discarded
+			entries.clear();
+		}
+	}
+
+	private static class CacheFile
+	{
+		String uri;
+
+		Map< String, Entry > nodes;
+	}
+
+	/**
+	 * Creates a cache for a container with the change detector that suits its
+	 * reader, or returns null if the backend is not supported.
+	 *
+	 * @param containerPath the container path or URI as given by the user
+	 * @param n5 the reader for the container
+	 * @return the cache or null
+	 */
+	public static N5DiscoveryCache forContainer( final String containerPath, final N5Reader n5 )
+	{
+		if ( containerPath == null || n5 == null )
+			return null;
+
+		final String path = containerPath.trim();
+		final N5Reader backend = N5CachingReader.unwrap( n5 );
+		if ( backend instanceof N5HDF5Reader )
+		{
+			final File h5 = new File( N5Importer.h5DatasetPath( path, true ) );
+			return new N5DiscoveryCache( h5.getAbsolutePath(), fileDetector( h5 ) );
+		}
+		else if ( backend instanceof N5ZarrReader )
+		{
+			final String basePath = ( ( N5ZarrReader ) backend ).getBasePath();
+			return new N5DiscoveryCache( new File( basePath ).toURI().toString(),
+					fileSystemDetector( basePath, ".zattrs", ".zarray", ".zgroup" ) );
+		}
+		else if ( backend instanceof N5FSReader )
+		{
+			final String basePath = ( ( N5FSReader ) backend ).getBasePath();
+			return new N5DiscoveryCache( new File( basePath ).toURI().toString(),
+					fileSystemDetector( basePath, "attributes.json" ) );
+		}
+
+		final DataAccessType type = DataAccessType.detectType( path );
+		if ( type != DataAccessType.AMAZON_S3 && type != DataAccessType.GOOGLE_CLOUD )
+			return null;
+
+		try
+		{
+			final DataAccessFactory factory = new DataAccessFactory( type, path );
+			final N5DiscoveryCache cache;
+			if ( type == DataAccessType.AMAZON_S3 )
+			{
+				final AmazonS3URI uri = new AmazonS3URI( path );
+				cache = new N5DiscoveryCache( "s3://" + uri.getBucket() + "/" + uri.getKey(),
+						amazonS3Detector( factory.getAmazonS3(), uri.getBucket(), uri.getKey(), "attributes.json" ) );
+			}
+			else
+			{
+				final GoogleCloudStorageURI uri = new GoogleCloudStorageURI( path );
+				cache = new N5DiscoveryCache( "gs://" + uri.getBucket() + "/" + uri.getKey(),
+						googleCloudDetector( factory.getGoogleCloudStorage(), uri.getBucket(), uri.getKey(), "attributes.json" ) );
+			}
+			cache.setCacheChildren( false );
+			cache.setMaxAge( 24 * 60 * 60 * 1000L );
+			return cache;
+		}
+		catch ( final DataAccessException | RuntimeException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Versions a node by the modification times of its directory (changes when
+	 * children are added or removed) and of its attribute files.
+	 *
+	 * @param basePath the container root directory
+	 * @param attributeFiles the names of the attribute files of a node
+	 * @return the change detector
+	 */
+	public static ChangeDetector fileSystemDetector( final String basePath, final String... attributeFiles )
+	{
+		return path -> {
+			final File dir = new File( basePath, path );
+			if ( !dir.isDirectory() )
+				return null;
+
+			final StringBuilder version = new StringBuilder( Long.toString( dir.lastModified() ) );
+			for ( final String name : attributeFiles )
+				version.append( ':' ).append( new File( dir, name ).lastModified() );
+
+			return version.toString();
+		};
+	}
+
+	/**
+	 * Versions every node by the modification time and size of a single file,
+	 * as for HDF5.
+	 *
+	 * @param file the file
+	 * @return the change detector
+	 */
+	public static ChangeDetector fileDetector( final File file )
+	{
+		return path -> file.isFile() ? file.lastModified() + ":" + file.length() : null;
+	}
+
+	/**
+	 * Versions a node by the ETag of its attributes object, which does not
+	 * change with its children.
+	 *
+	 * @param s3 the client
+	 * @param bucket the bucket
+	 * @param containerKey the key of the container root
+	 * @param attributesFile the name of the attributes object
+	 * @return the change detector
+	 */
+	public static ChangeDetector amazonS3Detector( final AmazonS3 s3, final String bucket, final String containerKey, final String attributesFile )
+	{
+		return path -> {
+			try
+			{
+				return s3.getObjectMetadata( bucket, objectKey( containerKey, path, attributesFile ) ).getETag();
+			}
+			catch ( final AmazonS3Exception e )
+			{
+				return e.getStatusCode() == 404 ? "none" : null;
+			}
+			catch ( final RuntimeException e )
+			{
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Versions a node by the ETag of its attributes blob, which does not
+	 * change with its children.
+	 *
+	 * @param storage the client
+	 * @param bucket the bucket
+	 * @param containerKey the key of the container root
+	 * @param attributesFile the name of the attributes blob
+	 * @return the change detector
+	 */
+	public static ChangeDetector googleCloudDetector( final Storage storage, final String bucket, final String containerKey, final String attributesFile )
+	{
+		return path -> {
+			try
+			{
+				final Blob blob = storage.get( BlobId.of( bucket, objectKey( containerKey, path, attributesFile ) ) );
+				return blob == null ? "none" : blob.getEtag();
+			}
+			catch ( final RuntimeException e )
+			{
+				return null;
+			}
+		};
+	}
+
+	static String objectKey( final String containerKey, final String path, final String name )
+	{
+		final StringBuilder key = new StringBuilder();
+		for ( final String part : new String[]{ containerKey, path, name } )
+		{
+			if ( part == null )
+				continue;
+
+			for ( final String segment : part.split( "/" ) )
+				if ( !segment.isEmpty() )
+					key.append( key.length() == 0 ? "" : "/" ).append( segment );
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5;
+
+import java.util.Arrays;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+import org.janelia.saalfeldlab.n5.metadata.N5Metadata;
+
+/**
+ * Limits what {@link N5DatasetDiscoverer} reads while it discovers a
+ * container.  The children of a group are only listed if
+ * {@link #descend(String, int)} is true for it, the attributes of a node are
+ * only read and parsed if {@link #parse(String, int)} is true, and parsed
+ * nodes that are not {@link #accept(N5TreeNode) accepted} are trimmed from
+ * the tree unless they have children that are kept.
+ * <p>
+ * Paths are relative to the container root, without leading slash, and
+ * depths are relative to the root of the discovered tree, which has depth 0.
+ */
+public interface N5DiscoveryFilter
+{
+	/**
+	 * @param path the path of a group
+	 * @param depth the depth of the group
+	 * @return whether to list the children of the group
+	 */
+	default boolean descend( final String path, final int depth )
+	{
+		return true;
+	}
+
+	/**
+	 * @param path the path of a node
+	 * @param depth the depth of the node
+	 * @return whether to read and parse the metadata of the node
+	 */
+	default boolean parse( final String path, final int depth )
+	{
+		return true;
+	}
+
+	/**
+	 * @param node a parsed node
+	 * @return whether the node can be opened
+	 */
+	default boolean accept( final N5TreeNode node )
+	{
+		return true;
+	}
+
+	/**
+	 * Keeps the nodes whose path matches a glob, where * matches within one
+	 * path element, ** across elements, and ? matches one character.  Only the
+	 * groups that can lead to a match are listed, so {@code raw/**} never
+	 * lists anything beside raw.
+	 *
+	 * @param glob the glob, relative to the container root
+	 * @return the filter
+	 */
+	static N5DiscoveryFilter pathGlob( final String glob )
+	{
+		// relative paths with forward slashes
+		final UnaryOperator< String > relative = x -> N5DiscoveryCache.objectKey( x.replace( '\\', '/' ), null, null );
+
+		// true if the first path is the second or above it
+		final BiPredicate< String, String > isAncestor = ( a, x ) -> a.isEmpty() || x.equals( a ) || x.startsWith( a + "/" );
+
+		final String trimmed = relative.apply( glob );
+		final StringBuilder regex = new StringBuilder();
+		int literalEnd = -1;
+		for ( int i = 0; i < trimmed.length(); i++ )
+		{
+			final char c = trimmed.charAt( i );
+			if ( c == '*' || c == '?' )
+			{
+				if ( literalEnd < 0 )
+					literalEnd = i;
+
+				if ( c == '?' )
+					regex.append( "[^/]" );
+				else if ( i + 1 < trimmed.length() && trimmed.charAt( i + 1 ) == '*' )
+				{
+					regex.append( ".*" );
+					i++;
+				}
+				else
+					regex.append( "[^/]*" );
+			}
+			else
+				regex.append( Pattern.quote( String.valueOf( c ) ) );
+		}
+
+		final Predicate< String > matches = Pattern.compile( "^" + regex + "$" ).asPredicate();
+		final boolean wildcard = literalEnd >= 0;
+
+		// the group below which all matches are
+		final String base = wildcard ? trimmed.substring( 0, Math.max( 0, trimmed.lastIndexOf( '/', literalEnd ) ) ) : trimmed;
+
+		return new N5DiscoveryFilter()
+		{
+			@Override
+			public boolean descend( final String path, final int depth )
+			{
+				final String p = relative.apply( path );
+				return isAncestor.test( p, base ) || ( wildcard && isAncestor.test( base, p ) );
+			}
+
+			@Override
+			public boolean parse( final String path, final int depth )
+			{
+				return matches.test( relative.apply( path ) );
+			}
+
+			@Override
+			public boolean accept( final N5TreeNode node )
+			{
+				return matches.test( relative.apply( node.path ) );
+			}
+		};
+	}
+
+	/**
+	 * @param maxDepth the maximum depth below the root of the discovered tree
+	 * @return a filter that neither lists nor parses deeper nodes
+	 */
+	static N5DiscoveryFilter maxDepth( final int maxDepth )
+	{
+		return new N5DiscoveryFilter()
+		{
+			@Override
+			public boolean descend( final String path, final int depth )
+			{
+				return depth < maxDepth;
+			}
+
+			@Override
+			public boolean parse( final String path, final int depth )
+			{
+				return depth <= maxDepth;
+			}
+		};
+	}
+
+	/**
+	 * Keeps the nodes with metadata of one of the given types.  Group
+	 * metadata is parsed from the metadata of the children, so to keep
+	 * multi-scale groups, keep their scale levels as well.
+	 *
+	 * @param types the metadata types
+	 * @return the filter
+	 */
+	@SafeVarargs
+	static N5DiscoveryFilter metadataType( final Class< ? extends N5Metadata >... types )
+	{
+		return new N5DiscoveryFilter()
+		{
+			@Override
+			public boolean accept( final N5TreeNode node )
+			{
+				return Arrays.stream( types ).anyMatch( x -> x.isInstance( node.getMetadata() ) );
+			}
+		};
+	}
+
+	/**
+	 * Keeps the nodes whose metadata has dataset attributes that pass a test.
+	 * Metadata without dataset attributes, like that of multi-scale groups,
+	 * is kept if the metadata of one of the node's children is.
+	 *
+	 * @param test the test
+	 * @return the filter
+	 */
+	static N5DiscoveryFilter datasetAttributes( final Predicate< DatasetAttributes > test )
+	{
+		return new N5DiscoveryFilter()
+		{
+			@Override
+			public boolean accept( final N5TreeNode node )
+			{
+				final N5Metadata metadata = node.getMetadata();
+				if ( metadata == null )
+					return false;
+
+				final DatasetAttributes attributes = metadata.getAttributes();
+				if ( attributes != null )
+					return test.test( attributes );
+
+				for ( final N5TreeNode child : node.childrenList() )
+					if ( accept( child ) )
+						return true;
+
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param numDimensions the number of dimensions
+	 * @return a filter that keeps datasets with numDimensions dimensions
+	 */
+	static N5DiscoveryFilter numDimensions( final int numDimensions )
+	{
+		return datasetAttributes( x -> x.getNumDimensions() == numDimensions );
+	}
+
+	/**
+	 * @param dataType the data type
+	 * @return a filter that keeps datasets of dataType
+	 */
+	static N5DiscoveryFilter dataType( final DataType dataType )
+	{
+		return datasetAttributes( x -> x.getDataType() == dataType );
+	}
+
+	/**
+	 * @param filters the filters
+	 * @return a filter that lists, parses and keeps what all filters do
+	 */
+	static N5DiscoveryFilter and( final N5DiscoveryFilter... filters )
+	{
+		return new N5DiscoveryFilter()
+		{
+			@Override
+			public boolean descend( final String path, final int depth )
+			{
+				return Arrays.stream( filters ).allMatch( x -> x.descend( path, depth ) );
+			}
+
+			@Override
+			public boolean parse( final String path, final int depth )
+			{
+				return Arrays.stream( filters ).allMatch( x -> x.parse( path, depth ) );
+			}
+
+			@Override
+			public boolean accept( final N5TreeNode node )
+			{
+				return Arrays.stream( filters ).allMatch( x -> x.accept( node ) );
+			}
+		};
+	}
+}
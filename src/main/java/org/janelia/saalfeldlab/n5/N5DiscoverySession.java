@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The work of one discovery of a container, so that it can be stopped as a
+ * whole, for example when the user opens another container.
+ * <p>
+ * Discovery checks {@link #checkCancelled()} between requests to the
+ * container.  {@link #cancel()} sets the flag that makes these checks throw,
+ * cancels the registered futures and shuts down the registered executors, so
+ * that requests in flight are interrupted and no thread is left running.
+ * Closing a session cancels it.
+ */
+public class N5DiscoverySession implements AutoCloseable
+{
+	private volatile boolean cancelled = false;
+
+	private final List< ExecutorService > executors = new CopyOnWriteArrayList<>();
+
+	private final List< Future< ? > > futures = new CopyOnWriteArrayList<>();
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * @throws CancellationException if the session was cancelled
+	 */
+	public void checkCancelled() throws CancellationException
+	{
+		if ( cancelled )
+			throw new CancellationException( "discovery cancelled" );
+	}
+
+	/**
+	 * Registers an executor that is shut down when the session is cancelled,
+	 * immediately if it already is.
+	 *
+	 * @param <E> the executor type
+	 * @param executor the executor
+	 * @return executor
+	 */
+	public < E extends ExecutorService > E register( final E executor )
+	{
+		executors.add( executor );
+		if ( cancelled )
+			executor.shutdownNow();
+
+		return executor;
+	}
+
+	/**
+	 * Registers a future that is cancelled when the session is cancelled,
+	 * immediately if it already is.
+	 *
+	 * @param <F> the future type
+	 * @param future the future
+	 * @return future
+	 */
+	public < F extends Future< ? > > F register( final F future )
+	{
+		futures.add( future );
+		if ( cancelled )
+			future.cancel( true );
+
+		return future;
+	}
+
+	/**
+	 * Stops discovery: later checks throw, registered futures are cancelled
+	 * and registered executors are shut down.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+		for ( final Future< ? > future : futures )
+			future.cancel( true );
+
+		for ( final ExecutorService executor : executors )
+			executor.shutdownNow();
+
+		futures.clear();
+		executors.clear();
+	}
+
+	@Override
+	public void close()
+	{
+		cancel();
+	}
+}
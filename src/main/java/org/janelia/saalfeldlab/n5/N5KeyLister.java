@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.janelia.saalfeldlab.googlecloud.GoogleCloudStorageURI;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessException;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessFactory;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessType;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3URI;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Storage;
+
+/**
+ * Lists the metadata objects of a container on an object store with one flat
+ * (not delimited) listing of its prefix, so that the whole container takes
+ * one request per page of keys instead of one request per group.  Used by
+ * {@link N5DatasetDiscoverer#discoverFromKeys(N5Reader, N5TreeNode, N5KeyLister)}.
+ */
+@FunctionalInterface
+public interface N5KeyLister
+{
+	/**
+	 * The names of the objects that hold the metadata of n5 and zarr groups and datasets.
+	 */
+	public static final Set< String > METADATA_FILES = Collections.unmodifiableSet(
+			new HashSet<>( Arrays.asList( "attributes.json", ".zarray", ".zgroup", ".zattrs" ) ) );
+
+	/**
+	 * Lists the keys of all objects below the container whose name is one of
+	 * names, relative to the container root, such as "a/b/attributes.json".
+	 *
+	 * @param names the object names
+	 * @return the keys
+	 * @throws IOException the exception
+	 */
+	public List< String > list( Set< String > names ) throws IOException;
+
+	/**
+	 * @param s3 the client
+	 * @param bucket the bucket
+	 * @param containerKey the key of the container root
+	 * @return the lister
+	 */
+	public static N5KeyLister amazonS3( final AmazonS3 s3, final String bucket, final String containerKey )
+	{
+		return names -> {
+			final String prefix = prefix( containerKey );
+			final List< String > keys = new ArrayList<>();
+			final ListObjectsV2Request request = new ListObjectsV2Request()
+					.withBucketName( bucket )
+					.withPrefix( prefix );
+			try
+			{
+				ListObjectsV2Result result;
+				do
+				{
+					result = s3.listObjectsV2( request );
+					for ( final S3ObjectSummary object : result.getObjectSummaries() )
+						addKey( keys, object.getKey(), prefix, names );
+
+					request.setContinuationToken( result.getNextContinuationToken() );
+				}
+				while ( result.isTruncated() );
+			}
+			catch ( final RuntimeException e )
+			{
+				throw new IOException( e );
+			}
+			return keys;
+		};
+	}
+
+	/**
+	 * @param storage the client
+	 * @param bucket the bucket
+	 * @param containerKey the key of the container root
+	 * @return the lister
+	 */
+	public static N5KeyLister googleCloud( final Storage storage, final String bucket, final String containerKey )
+	{
+		return names -> {
+			final String prefix = prefix( containerKey );
+			final List< String > keys = new ArrayList<>();
+			try
+			{
+				// iterateAll requests the next page when needed
+				for ( final Blob blob : storage.list( bucket, Storage.BlobListOption.prefix( prefix ) ).iterateAll() )
+					addKey( keys, blob.getName(), prefix, names );
+			}
+			catch ( final RuntimeException e )
+			{
+				throw new IOException( e );
+			}
+			return keys;
+		};
+	}
+
+	/**
+	 * Creates a lister for a container on Amazon S3 or Google cloud storage.
+	 *
+	 * @param containerPath the container URI
+	 * @return the lister, or null if the container is not on an object store
+	 */
+	public static N5KeyLister forContainer( final String containerPath )
+	{
+		if ( containerPath == null )
+			return null;
+
+		final String path = containerPath.trim();
+		final DataAccessType type = DataAccessType.detectType( path );
+		try
+		{
+			if ( type == DataAccessType.AMAZON_S3 )
+			{
+				final AmazonS3URI uri = new AmazonS3URI( path );
+				return amazonS3( new DataAccessFactory( type, path ).getAmazonS3(), uri.getBucket(), uri.getKey() );
+			}
+			else if ( type == DataAccessType.GOOGLE_CLOUD )
+			{
+				final GoogleCloudStorageURI uri = new GoogleCloudStorageURI( path );
+				return googleCloud( new DataAccessFactory( type, path ).getGoogleCloudStorage(), uri.getBucket(), uri.getKey() );
+			}
+		}
+		catch ( final DataAccessException | RuntimeException e ) { }
+
+		return null;
+	}
+
+	static String prefix( final String containerKey )
+	{
+		final String key = N5DiscoveryCache.objectKey( containerKey, null, null );
+		return key.isEmpty() ? "" : key + "/";
+	}
+
+	static void addKey( final List< String > keys, final String key, final String prefix, final Set< String > names )
+	{
+		final String relativeKey = key.substring( prefix.length() );
+		final int i = relativeKey.lastIndexOf( '/' );
+		if ( names.contains( relativeKey.substring( i + 1 ) ) )
+			keys.add( relativeKey );
+	}
+}
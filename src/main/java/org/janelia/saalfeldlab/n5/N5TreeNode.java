@@ -25,45 +25,60 @@
  */
 package org.janelia.saalfeldlab.n5;
 
-import java.nio.file.Paths;
-import java.util.Collections;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Vector;
 
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
 
 import org.janelia.saalfeldlab.n5.metadata.N5Metadata;
 
+/**
+ * A group or dataset of a container.
+ * <p>
+ * Nodes are kept small so that trees of containers with millions of groups
+ * fit in memory: the child vector starts small instead of at the default
+ * capacity of ten, and the node name is computed once and interned, since
+ * names like s0 or c0 repeat throughout a container.
+ */
 public class N5TreeNode extends DefaultMutableTreeNode
 {
 	private static final long serialVersionUID = -6433341489220400345L;
 
 	public final String path;
 
+	private final String name;
+
 	private boolean isDataset;
 
+	private volatile boolean explored = true;
+
+	private boolean truncated = false;
+
 	private N5Metadata metadata;
 
 	public N5TreeNode( final String path, final boolean isDataset )
 	{
 		super();
 		this.path = path;
+		this.name = nodeName( path ).intern();
 		this.isDataset = isDataset;
 	}
 
-    public String getNodeName()
-    {
-        return Paths.get(removeLeadingSlash(path)).getFileName().toString();
-    }
+	public String getNodeName()
+	{
+		return name;
+	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * @return a new list of the children of this node
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	public List< N5TreeNode > childrenList()
 	{
-		/* TODO compiles with Eclipse compiler but not with javac because children
-		 * forwards to rawtype Enumeration DefaultMutableTreeNode#children()...
-		 */
-		@SuppressWarnings("rawtypes")
-		final List children = Collections.list( children() );
-		return children;
+		return children == null ? new ArrayList<>() : new ArrayList<>( ( List ) children );
 	}
 
 	public void setIsDataset( final boolean isDataset )
@@ -76,6 +91,38 @@ public class N5TreeNode extends DefaultMutableTreeNode
 		return isDataset;
 	}
 
+	/**
+	 * Discovery marks nodes as not explored until their subtree is
+	 * discovered, nodes are explored otherwise.
+	 *
+	 * @param explored whether the subtree of this node is discovered
+	 */
+	public void setExplored( final boolean explored )
+	{
+		this.explored = explored;
+	}
+
+	public boolean isExplored()
+	{
+		return explored;
+	}
+
+	/**
+	 * Discovery marks nodes whose children were cut to
+	 * {@link N5DatasetDiscoverer#getMaxChildrenPerNode()}.
+	 *
+	 * @param truncated whether some children of this node are not discovered
+	 */
+	public void setTruncated( final boolean truncated )
+	{
+		this.truncated = truncated;
+	}
+
+	public boolean isTruncated()
+	{
+		return truncated;
+	}
+
 	public void setMetadata( final N5Metadata metadata )
 	{
 		this.metadata = metadata;
@@ -86,12 +133,25 @@ public class N5TreeNode extends DefaultMutableTreeNode
 		return metadata;
 	}
 
+	@Override
+	public void insert( final MutableTreeNode child, final int index )
+	{
+		if ( children == null && allowsChildren )
+			children = new Vector<>( 2 );
+
+		super.insert( child, index );
+	}
+
+	@Override
+	public N5TreeNode getFirstLeaf()
+	{
+		return ( N5TreeNode ) super.getFirstLeaf();
+	}
 
 	@Override
 	public String toString()
 	{
-		final String nodeName = getNodeName();
-		return nodeName.isEmpty() ? "/" : nodeName;
+		return name.isEmpty() ? "/" : name;
 	}
 
 	public String printRecursive()
@@ -112,6 +172,28 @@ public class N5TreeNode extends DefaultMutableTreeNode
 		return out.toString();
 	}
 
+	/**
+	 * The last element of a path, as {@code Paths.get( removeLeadingSlash( path ) ).getFileName()}
+	 * gives it, without parsing the path.
+	 */
+	private static String nodeName( final String path )
+	{
+		int end = path.length();
+		while ( end > 0 && isSeparator( path.charAt( end - 1 ) ) )
+			end--;
+
+		int start = end;
+		while ( start > 0 && !isSeparator( path.charAt( start - 1 ) ) )
+			start--;
+
+		return path.substring( start, end );
+	}
+
+	private static boolean isSeparator( final char c )
+	{
+		return c == '/' || c == File.separatorChar;
+	}
+
     /**
      * Removes the leading slash from a given path and returns the corrected path.
      * It ensures correctness on both Unix and Windows, otherwise {@code pathName} is treated
@@ -124,4 +206,4 @@ public class N5TreeNode extends DefaultMutableTreeNode
 
         return pathName.startsWith("/") || pathName.startsWith("\\") ? pathName.substring(1) : pathName;
     }
-}
\ No newline at end of file
+}
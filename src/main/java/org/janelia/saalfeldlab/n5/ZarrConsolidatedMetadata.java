@@ -0,0 +1,297 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.janelia.saalfeldlab.n5.zarr.N5ZarrReader;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * The consolidated metadata of a zarr container, the contents of all its
+ * .zgroup, .zarray and .zattrs files in the single file .zmetadata at the
+ * container root, as written by zarr.consolidate_metadata.  With it, a
+ * container is discovered with one read.
+ * <p>
+ * As with zarr.open_consolidated, the file is trusted to be up to date, so
+ * it has to be rewritten with {@link #write(String)} when the container
+ * changes.
+ */
+public class ZarrConsolidatedMetadata
+{
+	public static final String FILE_NAME = ".zmetadata";
+
+	private static final String METADATA_KEY = "metadata";
+
+	private static final String FORMAT_KEY = "zarr_consolidated_format";
+
+	private static final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+	private final Map< String, JsonElement > metadata;
+
+	private ZarrConsolidatedMetadata( final Map< String, JsonElement > metadata )
+	{
+		this.metadata = metadata;
+	}
+
+	public static boolean exists( final String basePath )
+	{
+		return new File( basePath, FILE_NAME ).isFile();
+	}
+
+	/**
+	 * @param n5 the reader
+	 * @return the consolidated metadata, or null if n5 is not a zarr reader or its container has none
+	 */
+	public static ZarrConsolidatedMetadata read( final N5Reader n5 )
+	{
+		final N5Reader backend = N5CachingReader.unwrap( n5 );
+		if ( !( backend instanceof N5ZarrReader ) )
+			return null;
+
+		try
+		{
+			return read( ( ( N5ZarrReader ) backend ).getBasePath() );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @param basePath the container root directory
+	 * @return the consolidated metadata, or null if the container has none
+	 * @throws IOException the exception
+	 */
+	public static ZarrConsolidatedMetadata read( final String basePath ) throws IOException
+	{
+		final Path path = Paths.get( basePath, FILE_NAME );
+		if ( !Files.isRegularFile( path ) )
+			return null;
+
+		final JsonElement json;
+		try ( final Reader reader = Files.newBufferedReader( path, StandardCharsets.UTF_8 ) )
+		{
+			json = new JsonParser().parse( reader );
+		}
+
+		if ( !json.isJsonObject() || !json.getAsJsonObject().has( METADATA_KEY ) )
+			return null;
+
+		final Map< String, JsonElement > metadata = new HashMap<>();
+		for ( final Map.Entry< String, JsonElement > e : json.getAsJsonObject().getAsJsonObject( METADATA_KEY ).entrySet() )
+			metadata.put( e.getKey(), e.getValue() );
+
+		return new ZarrConsolidatedMetadata( metadata );
+	}
+
+	/**
+	 * Writes .zmetadata with the metadata files of a container, replacing an
+	 * existing one.  Does not look into datasets, whose chunks can be many.
+	 *
+	 * @param basePath the container root directory
+	 * @throws IOException the exception
+	 */
+	public static void write( final String basePath ) throws IOException
+	{
+		final Path root = Paths.get( basePath );
+		final Map< String, JsonElement > metadata = new LinkedHashMap<>();
+		Files.walkFileTree( root, new SimpleFileVisitor< Path >()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory( final Path dir, final BasicFileAttributes attrs ) throws IOException
+			{
+				final String relative = root.relativize( dir ).toString().replace( File.separatorChar, '/' );
+				for ( final String name : new String[]{ ".zgroup", ".zarray", ".zattrs" } )
+				{
+					final Path file = dir.resolve( name );
+					if ( Files.isRegularFile( file ) )
+					{
+						try ( final Reader reader = Files.newBufferedReader( file, StandardCharsets.UTF_8 ) )
+						{
+							metadata.put( relative.isEmpty() ? name : relative + "/" + name, new JsonParser().parse( reader ) );
+						}
+					}
+				}
+
+				// do not list the chunks of datasets
+				return Files.isRegularFile( dir.resolve( ".zarray" ) ) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+		});
+
+		final JsonObject metadataJson = new JsonObject();
+		metadata.forEach( metadataJson::add );
+
+		final JsonObject json = new JsonObject();
+		json.add( METADATA_KEY, metadataJson );
+		json.addProperty( FORMAT_KEY, 1 );
+
+		final Path tmp = root.resolve( FILE_NAME + "." + UUID.randomUUID() + ".tmp" );
+		try ( final Writer writer = Files.newBufferedWriter( tmp, StandardCharsets.UTF_8 ) )
+		{
+			gson.toJson( json, writer );
+		}
+		Files.move( tmp, root.resolve( FILE_NAME ), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	/**
+	 * @return the keys of all metadata files, relative to the container root
+	 */
+	public List< String > getKeys()
+	{
+		return new ArrayList<>( metadata.keySet() );
+	}
+
+	/**
+	 * @return a lister that lists the keys of the metadata files without reading the container
+	 */
+	public N5KeyLister lister()
+	{
+		return names -> {
+			final List< String > keys = new ArrayList<>();
+			for ( final String key : metadata.keySet() )
+				if ( names.contains( key.substring( key.lastIndexOf( '/' ) + 1 ) ) )
+					keys.add( key );
+
+			return keys;
+		};
+	}
+
+	/**
+	 * The attributes of a node as {@link N5ZarrReader#getAttributes(String)}
+	 * gives them: the contents of .zattrs and, for arrays, the n5 dataset
+	 * attributes "dimensions", "blockSize" and "dataType" mapped from .zarray.
+	 *
+	 * @param path the path of the node
+	 * @return the attributes, empty if the node has none
+	 */
+	public HashMap< String, JsonElement > getAttributes( final String path )
+	{
+		final String prefix = N5DiscoveryCache.objectKey( path, null, null );
+		final HashMap< String, JsonElement > attributes = new HashMap<>();
+
+		final JsonElement zattrs = metadata.get( key( prefix, ".zattrs" ) );
+		if ( zattrs != null && zattrs.isJsonObject() )
+			for ( final Map.Entry< String, JsonElement > e : zattrs.getAsJsonObject().entrySet() )
+				attributes.put( e.getKey(), e.getValue() );
+
+		final JsonElement zarray = metadata.get( key( prefix, ".zarray" ) );
+		if ( zarray != null && zarray.isJsonObject() )
+		{
+			final JsonObject array = zarray.getAsJsonObject();
+			final boolean cOrder = !array.has( "order" ) || "C".equals( array.get( "order" ).getAsString() );
+			if ( array.has( "shape" ) )
+				attributes.put( "dimensions", reverse( array.getAsJsonArray( "shape" ), cOrder ) );
+
+			if ( array.has( "chunks" ) )
+				attributes.put( "blockSize", reverse( array.getAsJsonArray( "chunks" ), cOrder ) );
+
+			final DataType dataType = array.has( "dtype" ) && array.get( "dtype" ).isJsonPrimitive()
+					? dataType( array.get( "dtype" ).getAsString() )
+					: null;
+			if ( dataType != null )
+				attributes.put( "dataType", new JsonPrimitive( dataType.toString() ) );
+		}
+		return attributes;
+	}
+
+	private static String key( final String prefix, final String name )
+	{
+		return prefix.isEmpty() ? name : prefix + "/" + name;
+	}
+
+	/*
+	 * zarr lists dimensions slowest first for C order, n5 fastest first.
+	 */
+	private static JsonArray reverse( final JsonArray array, final boolean reverse )
+	{
+		if ( !reverse )
+			return array;
+
+		final JsonArray reversed = new JsonArray();
+		for ( int i = array.size() - 1; i >= 0; i-- )
+			reversed.add( array.get( i ) );
+
+		return reversed;
+	}
+
+	/**
+	 * @param dtype a numpy type string such as "&lt;u2"
+	 * @return the data type, or null if it has no n5 equivalent
+	 */
+	public static DataType dataType( final String dtype )
+	{
+		if ( dtype.length() < 3 )
+			return null;
+
+		final int size;
+		try
+		{
+			size = Integer.parseInt( dtype.substring( 2 ) );
+		}
+		catch ( final NumberFormatException e )
+		{
+			return null;
+		}
+
+		switch ( dtype.charAt( 1 ) )
+		{
+		case 'u':
+			return size == 1 ? DataType.UINT8 : size == 2 ? DataType.UINT16 : size == 4 ? DataType.UINT32 : size == 8 ? DataType.UINT64 : null;
+		case 'i':
+			return size == 1 ? DataType.INT8 : size == 2 ? DataType.INT16 : size == 4 ? DataType.INT32 : size == 8 ? DataType.INT64 : null;
+		case 'f':
+			return size == 4 ? DataType.FLOAT32 : size == 8 ? DataType.FLOAT64 : null;
+		default:
+			return null;
+		}
+	}
+}
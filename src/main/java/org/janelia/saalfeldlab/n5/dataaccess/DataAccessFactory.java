@@ -158,6 +158,27 @@ public class DataAccessFactory
 		}
 	}
 
+	public DataAccessType getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return the Amazon S3 client, or null if this is not an S3 factory
+	 */
+	public AmazonS3 getAmazonS3()
+	{
+		return s3;
+	}
+
+	/**
+	 * @return the Google cloud storage client, or null if this is not a Google cloud factory
+	 */
+	public Storage getGoogleCloudStorage()
+	{
+		return googleCloudStorage;
+	}
+
 	public static String awsRegionFromError( AmazonS3Exception e )
 	{
 		String errorMessage = e.getMessage();
@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessType;
+
+import ij.ImagePlus;
+
+/**
+ * Chooses a block size for a dataset from its shape, data type and a target
+ * size for the compressed blocks.
+ * <p>
+ * Blocks cover about the same physical extent along every spatial dimension,
+ * so a stack with coarse z sampling gets blocks that are thin in z.
+ * Dimensions without a resolution (channels, time) get a block size of one.
+ * Block sizes are powers of two unless a block spans the whole dimension.
+ */
+public class AutoBlockSize
+{
+	public static final long FILESYSTEM_TARGET_BYTES = 1 << 20;
+
+	public static final long CLOUD_TARGET_BYTES = 8 << 20;
+
+	public static final long HDF5_TARGET_BYTES = 1 << 20;
+
+	public static final double DEFAULT_COMPRESSION_RATIO = 2.0;
+
+	/**
+	 * Returns the default target size in bytes of a compressed block for a
+	 * storage backend.  Cloud storage favors fewer, larger objects.
+	 *
+	 * @param type the backend, may be null
+	 * @return the target size in bytes
+	 */
+	public static long defaultTargetBytes( final DataAccessType type )
+	{
+		if ( type == null )
+			return FILESYSTEM_TARGET_BYTES;
+
+		switch ( type )
+		{
+		case AMAZON_S3:
+		case GOOGLE_CLOUD:
+			return CLOUD_TARGET_BYTES;
+		case HDF5:
+			return HDF5_TARGET_BYTES;
+		default:
+			return FILESYSTEM_TARGET_BYTES;
+		}
+	}
+
+	/**
+	 * Returns a block size for a dataset.
+	 *
+	 * @param dimensions the dataset dimensions
+	 * @param dataType the data type
+	 * @param resolution the physical size of a pixel per dimension, NaN or
+	 *        non-positive for dimensions that are not spatial (may be null
+	 *        for isotropic data)
+	 * @param targetBytes the target size in bytes of a compressed block
+	 * @param compressionRatio the expected compression ratio, 1 for raw data
+	 * @return the block size
+	 */
+	public static int[] blockSize(
+			final long[] dimensions,
+			final DataType dataType,
+			final double[] resolution,
+			final long targetBytes,
+			final double compressionRatio )
+	{
+		final int nd = dimensions.length;
+		final double[] res = spatialResolution( nd, resolution );
+
+		final double ratio = compressionRatio > 0 ? compressionRatio : 1;
+		final long targetElements = Math.max( 1,
+				( long ) ( targetBytes * ratio / N5BlockUtils.bytesPerElement( dataType ) ) );
+
+		// largest power of two per dimension that is at or below the isotropic extent
+		final double extent = isotropicExtent( dimensions, res, targetElements );
+		final int[] blockSize = new int[ nd ];
+		for ( int d = 0; d < nd; d++ )
+		{
+			if ( Double.isNaN( res[ d ] ) )
+				blockSize[ d ] = 1;
+			else
+				blockSize[ d ] = clamp( floorPowerOfTwo( extent / res[ d ] ), dimensions[ d ] );
+		}
+
+		// grow the block along the dimension with the smallest physical extent while it fits
+		while ( true )
+		{
+			final long n = numElements( blockSize );
+			int best = -1;
+			for ( int d = 0; d < nd; d++ )
+			{
+				if ( Double.isNaN( res[ d ] ) || blockSize[ d ] >= dimensions[ d ] )
+					continue;
+
+				final long grown = n / blockSize[ d ] * clamp( 2L * blockSize[ d ], dimensions[ d ] );
+				if ( grown > targetElements )
+					continue;
+
+				if ( best < 0 || blockSize[ d ] * res[ d ] < blockSize[ best ] * res[ best ] )
+					best = d;
+			}
+
+			if ( best < 0 )
+				break;
+
+			blockSize[ best ] = clamp( 2L * blockSize[ best ], dimensions[ best ] );
+		}
+
+		return blockSize;
+	}
+
+	/**
+	 * Returns a block size for a dataset using the default target size and
+	 * compression ratio.
+	 *
+	 * @param dimensions the dataset dimensions
+	 * @param dataType the data type
+	 * @param resolution the physical size of a pixel per dimension, NaN for
+	 *        dimensions that are not spatial (may be null)
+	 * @param backend the storage backend, may be null
+	 * @return the block size
+	 */
+	public static int[] blockSize(
+			final long[] dimensions,
+			final DataType dataType,
+			final double[] resolution,
+			final DataAccessType backend )
+	{
+		return blockSize( dimensions, dataType, resolution, defaultTargetBytes( backend ),
+				backend == DataAccessType.HDF5 ? 1 : DEFAULT_COMPRESSION_RATIO );
+	}
+
+	/**
+	 * Returns the resolution of the dimensions of an {@link ImagePlus} in the
+	 * order x, y, c, z, t, skipping dimensions of size one.  This is the order
+	 * of the images that are exported.  Channel and time get NaN.
+	 *
+	 * @param imp the image
+	 * @return the resolution
+	 */
+	public static double[] resolution( final ImagePlus imp )
+	{
+		final double[] res = new double[ 5 ];
+		int n = 0;
+		res[ n++ ] = imp.getCalibration().pixelWidth;
+		res[ n++ ] = imp.getCalibration().pixelHeight;
+		if ( imp.getNChannels() > 1 )
+			res[ n++ ] = Double.NaN;
+		if ( imp.getNSlices() > 1 )
+			res[ n++ ] = imp.getCalibration().pixelDepth;
+		if ( imp.getNFrames() > 1 )
+			res[ n++ ] = Double.NaN;
+
+		final double[] out = new double[ n ];
+		System.arraycopy( res, 0, out, 0, n );
+		return out;
+	}
+
+	private static double[] spatialResolution( final int nd, final double[] resolution )
+	{
+		final double[] res = new double[ nd ];
+		boolean anySpatial = false;
+		for ( int d = 0; d < nd; d++ )
+		{
+			final double r = resolution == null || d >= resolution.length ? 1 : resolution[ d ];
+			res[ d ] = r > 0 && !Double.isInfinite( r ) ? r : Double.NaN;
+			anySpatial |= !Double.isNaN( res[ d ] );
+		}
+
+		if ( !anySpatial )
+			for ( int d = 0; d < nd; d++ )
+				res[ d ] = 1;
+
+		return res;
+	}
+
+	/**
+	 * Finds the physical extent e such that a block with extent e along every
+	 * spatial dimension (clamped to the dataset) has about targetElements
+	 * elements.
+	 */
+	private static double isotropicExtent( final long[] dimensions, final double[] res, final long targetElements )
+	{
+		double lo = 0;
+		double hi = 0;
+		for ( int d = 0; d < dimensions.length; d++ )
+			if ( !Double.isNaN( res[ d ] ) )
+				hi = Math.max( hi, dimensions[ d ] * res[ d ] );
+
+		for ( int i = 0; i < 64; i++ )
+		{
+			final double mid = 0.5 * ( lo + hi );
+			double n = 1;
+			for ( int d = 0; d < dimensions.length; d++ )
+				if ( !Double.isNaN( res[ d ] ) )
+					n *= Math.max( 1, Math.min( dimensions[ d ], mid / res[ d ] ) );
+
+			if ( n > targetElements )
+				hi = mid;
+			else
+				lo = mid;
+		}
+		return lo;
+	}
+
+	private static long floorPowerOfTwo( final double x )
+	{
+		return x < 2 ? 1 : Long.highestOneBit( ( long ) x );
+	}
+
+	private static int clamp( final long size, final long dimension )
+	{
+		return ( int ) Math.max( 1, Math.min( Math.min( size, dimension ), Integer.MAX_VALUE ) );
+	}
+
+	private static long numElements( final int[] blockSize )
+	{
+		long n = 1;
+		for ( final int s : blockSize )
+			n *= s;
+		return n;
+	}
+}
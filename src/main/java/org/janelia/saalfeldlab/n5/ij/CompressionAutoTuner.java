@@ -0,0 +1,387 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.janelia.saalfeldlab.n5.DefaultBlockWriter;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.Lz4Compression;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.XzCompression;
+import org.janelia.saalfeldlab.n5.blosc.BloscCompression;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+
+/**
+ * Chooses a {@link Compression} for a dataset by encoding and decoding a
+ * sample of its blocks with a set of candidate codecs and comparing the
+ * measured compression ratios and throughputs.
+ * <p>
+ * Blocks are encoded in memory, so the measured write and read speeds do not
+ * include storage latency. An expected storage throughput can be given with
+ * {@link #setStorageThroughput(double)} so that the write and read goals
+ * account for the time spent moving the compressed bytes.
+ */
+public class CompressionAutoTuner
+{
+	public static enum Goal { SIZE, WRITE_SPEED, READ_SPEED }
+
+	public static final long DEFAULT_TIME_BUDGET_MILLIS = 10000;
+
+	public static final int DEFAULT_MAX_SAMPLE_BLOCKS = 16;
+
+	private final Map< String, Compression > candidates;
+
+	private long timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+
+	private int maxSampleBlocks = DEFAULT_MAX_SAMPLE_BLOCKS;
+
+	private double storageBytesPerSecond = 0;
+
+	public CompressionAutoTuner( final Map< String, Compression > candidates )
+	{
+		this.candidates = candidates;
+	}
+
+	public CompressionAutoTuner()
+	{
+		this( defaultCandidates() );
+	}
+
+	/**
+	 * Returns the default candidates, ordered from cheapest to most
+	 * expensive so that the slow codecs are the ones dropped when the time
+	 * budget runs out.
+	 *
+	 * @return the candidates by name
+	 */
+	public static LinkedHashMap< String, Compression > defaultCandidates()
+	{
+		final LinkedHashMap< String, Compression > candidates = new LinkedHashMap<>();
+		candidates.put( "raw", new RawCompression() );
+		candidates.put( "lz4", new Lz4Compression() );
+		candidates.put( "blosc lz4 shuffle", new BloscCompression( "lz4", 5, 1, 0, 1 ) );
+		candidates.put( "blosc zstd bitshuffle", new BloscCompression( "zstd", 5, 2, 0, 1 ) );
+		candidates.put( "gzip level 1", new GzipCompression( 1 ) );
+		candidates.put( "gzip level 6", new GzipCompression( 6 ) );
+		candidates.put( "gzip level 9", new GzipCompression( 9 ) );
+		candidates.put( "xz preset 1", new XzCompression( 1 ) );
+		candidates.put( "xz preset 6", new XzCompression( 6 ) );
+		return candidates;
+	}
+
+	/**
+	 * Sets the total time that may be spent benchmarking all candidates.
+	 *
+	 * @param timeBudgetMillis the budget in milliseconds
+	 */
+	public void setTimeBudget( final long timeBudgetMillis )
+	{
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+
+	public void setMaxSampleBlocks( final int maxSampleBlocks )
+	{
+		this.maxSampleBlocks = maxSampleBlocks;
+	}
+
+	/**
+	 * Sets the expected throughput of the storage backend. If positive,
+	 * the time needed to transfer the compressed bytes is added to the
+	 * encode and decode times when ranking by write or read speed.
+	 *
+	 * @param megabytesPerSecond the throughput in MB/s, or zero to ignore storage
+	 */
+	public void setStorageThroughput( final double megabytesPerSecond )
+	{
+		this.storageBytesPerSecond = megabytesPerSecond * 1e6;
+	}
+
+	/**
+	 * Benchmarks the candidates on a sample of blocks and returns the best
+	 * one for the given goal.
+	 *
+	 * @param <T> the image type
+	 * @param img the image
+	 * @param blockSize the block size that will be used for export
+	 * @param goal the goal
+	 * @param log receives one line per candidate, may be null
+	 * @return the best compression, or {@link RawCompression} if no candidate could be measured
+	 */
+	public < T extends NativeType< T > > Compression tune(
+			final RandomAccessibleInterval< T > img,
+			final int[] blockSize,
+			final Goal goal,
+			final Consumer< String > log )
+	{
+		final List< Trial > trials = benchmark( img, blockSize, log );
+		if ( log != null )
+		{
+			for ( final Trial t : trials )
+				log.accept( t.toString() );
+		}
+
+		final Trial best = best( trials, goal );
+		if ( best == null )
+			return new RawCompression();
+
+		if ( log != null )
+			log.accept( "Selected compression: " + best.name );
+
+		return best.compression;
+	}
+
+	/**
+	 * Like {@link #benchmark(RandomAccessibleInterval, int[], Consumer)}
+	 * without a log.
+	 *
+	 * @param <T> the image type
+	 * @param img the image
+	 * @param blockSize the block size
+	 * @return the measurements of every candidate that could be run
+	 */
+	public < T extends NativeType< T > > List< Trial > benchmark(
+			final RandomAccessibleInterval< T > img,
+			final int[] blockSize )
+	{
+		return benchmark( img, blockSize, null );
+	}
+
+	/**
+	 * Encodes and decodes a sample of blocks with every candidate until the
+	 * time budget is exhausted.  Candidates that can not be run are skipped.
+	 *
+	 * @param <T> the image type
+	 * @param img the image
+	 * @param blockSize the block size
+	 * @param log receives one line per candidate that could not be run, may be null
+	 * @return the measurements of every candidate that could be run
+	 */
+	public < T extends NativeType< T > > List< Trial > benchmark(
+			final RandomAccessibleInterval< T > img,
+			final int[] blockSize,
+			final Consumer< String > log )
+	{
+		final DataType dataType = N5BlockUtils.dataType( Util.getTypeFromInterval( img ) );
+		final List< DataBlock< ? > > sample = sampleBlocks( img, dataType, blockSize );
+		final long deadline = System.currentTimeMillis() + timeBudgetMillis;
+
+		final ArrayList< Trial > trials = new ArrayList<>();
+		for ( final Map.Entry< String, Compression > candidate : candidates.entrySet() )
+		{
+			if ( System.currentTimeMillis() > deadline )
+				break;
+
+			final DatasetAttributes attributes = new DatasetAttributes(
+					Intervals.dimensionsAsLongArray( img ), blockSize, dataType, candidate.getValue() );
+			try
+			{
+				final Trial trial = measure( candidate.getKey(), attributes, sample, dataType, deadline );
+				if ( trial != null )
+					trials.add( trial );
+			}
+			catch ( final Exception | LinkageError e )
+			{
+				// e.g. the native blosc library is not available on this platform
+				if ( log != null )
+					log.accept( "Could not benchmark " + candidate.getKey() + ": " + e.getMessage() );
+			}
+		}
+		return trials;
+	}
+
+	/**
+	 * Returns the best trial for the goal.  Trials are compared per raw
+	 * byte, as a candidate that ran into the time budget was measured on
+	 * fewer blocks than the others.
+	 *
+	 * @param trials the trials
+	 * @param goal the goal
+	 * @return the best trial, or null if there are no trials
+	 */
+	public Trial best( final List< Trial > trials, final Goal goal )
+	{
+		final Comparator< Trial > comparator;
+		switch ( goal )
+		{
+		case WRITE_SPEED:
+			comparator = Comparator.comparingDouble( t -> t.effectiveWriteSeconds( storageBytesPerSecond ) );
+			break;
+		case READ_SPEED:
+			comparator = Comparator.comparingDouble( t -> t.effectiveReadSeconds( storageBytesPerSecond ) );
+			break;
+		case SIZE:
+		default:
+			comparator = Comparator.comparingDouble( ( final Trial t ) -> 1.0 / t.ratio() )
+				.thenComparingDouble( t -> t.effectiveWriteSeconds( 0 ) );
+			break;
+		}
+		return trials.stream().min( comparator ).orElse( null );
+	}
+
+	private < T extends NativeType< T > > List< DataBlock< ? > > sampleBlocks(
+			final RandomAccessibleInterval< T > img,
+			final DataType dataType,
+			final int[] blockSize )
+	{
+		final long[] gridDimensions = N5BlockUtils.gridDimensions( Intervals.dimensionsAsLongArray( img ), blockSize );
+		final long numBlocks = Intervals.numElements( gridDimensions );
+		final int n = ( int ) Math.max( 1, Math.min( maxSampleBlocks, numBlocks ) );
+
+		// spread the samples evenly over the grid
+		final ArrayList< DataBlock< ? > > sample = new ArrayList<>();
+		for ( int i = 0; i < n; i++ )
+		{
+			final long index = ( long ) ( ( i + 0.5 ) * numBlocks / n );
+			final long[] gridPosition = N5BlockUtils.gridPosition( index, gridDimensions );
+			sample.add( N5BlockUtils.createDataBlock( img, dataType, blockSize, gridPosition ) );
+		}
+		return sample;
+	}
+
+	private static Trial measure(
+			final String name,
+			final DatasetAttributes attributes,
+			final List< DataBlock< ? > > sample,
+			final DataType dataType,
+			final long deadline ) throws IOException
+	{
+		final int bytesPerElement = N5BlockUtils.bytesPerElement( dataType );
+		long rawBytes = 0;
+		long compressedBytes = 0;
+		long writeNanos = 0;
+		long readNanos = 0;
+		int numMeasured = 0;
+		for ( final DataBlock< ? > block : sample )
+		{
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final long writeStart = System.nanoTime();
+			DefaultBlockWriter.writeBlock( out, attributes, block );
+			writeNanos += System.nanoTime() - writeStart;
+
+			final byte[] encoded = out.toByteArray();
+			final long readStart = System.nanoTime();
+			DefaultBlockReader.readBlock( new ByteArrayInputStream( encoded ), attributes, block.getGridPosition() );
+			readNanos += System.nanoTime() - readStart;
+
+			rawBytes += ( long ) block.getNumElements() * bytesPerElement;
+			compressedBytes += encoded.length;
+			numMeasured++;
+
+			if ( System.currentTimeMillis() > deadline )
+				break;
+		}
+
+		if ( numMeasured == 0 )
+			return null;
+
+		return new Trial( name, attributes.getCompression(), rawBytes, compressedBytes, writeNanos, readNanos );
+	}
+
+	public static class Trial
+	{
+		public final String name;
+
+		public final Compression compression;
+
+		public final long rawBytes;
+
+		public final long compressedBytes;
+
+		public final long writeNanos;
+
+		public final long readNanos;
+
+		public Trial( final String name, final Compression compression,
+				final long rawBytes, final long compressedBytes,
+				final long writeNanos, final long readNanos )
+		{
+			this.name = name;
+			this.compression = compression;
+			this.rawBytes = rawBytes;
+			this.compressedBytes = compressedBytes;
+			this.writeNanos = writeNanos;
+			this.readNanos = readNanos;
+		}
+
+		public double ratio()
+		{
+			return ( double ) rawBytes / compressedBytes;
+		}
+
+		public double writeMegabytesPerSecond()
+		{
+			return rawBytes / ( writeNanos / 1e9 ) / 1e6;
+		}
+
+		public double readMegabytesPerSecond()
+		{
+			return rawBytes / ( readNanos / 1e9 ) / 1e6;
+		}
+
+		/*
+		 * Seconds to encode and store one raw byte.
+		 */
+		private double effectiveWriteSeconds( final double storageBytesPerSecond )
+		{
+			final double transfer = storageBytesPerSecond > 0 ? compressedBytes / storageBytesPerSecond : 0;
+			return ( writeNanos / 1e9 + transfer ) / rawBytes;
+		}
+
+		/*
+		 * Seconds to load and decode one raw byte.
+		 */
+		private double effectiveReadSeconds( final double storageBytesPerSecond )
+		{
+			final double transfer = storageBytesPerSecond > 0 ? compressedBytes / storageBytesPerSecond : 0;
+			return ( readNanos / 1e9 + transfer ) / rawBytes;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "%-24s ratio %6.2f  write %8.1f MB/s  read %8.1f MB/s",
+					name, ratio(), writeMegabytesPerSecond(), readMegabytesPerSecond() );
+		}
+	}
+}
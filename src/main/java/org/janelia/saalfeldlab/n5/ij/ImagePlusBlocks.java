@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.FloatArrayDataBlock;
+import org.janelia.saalfeldlab.n5.IntArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+/**
+ * Creates {@link DataBlock}s directly from the pixel arrays of an
+ * {@link ImagePlus}, without going through imglib2 cursors.  Rows are copied
+ * with {@link System#arraycopy}, whole slices with a single copy, and a block
+ * that is exactly one slice wraps the slice's pixel array.
+ * <p>
+ * The dimensions are x, y, c, z, t without the singleton c, z and t
+ * dimensions, the same as for {@link net.imglib2.img.imageplus.ImagePlusImgs#from(ImagePlus)}.
+ * Use {@link #supports(ImagePlus)} to check whether an image can be exported
+ * this way.
+ */
+public class ImagePlusBlocks
+{
+	private static final int C = 0, Z = 1, T = 2;
+
+	private final ImagePlus imp;
+
+	private final ImageStack stack;
+
+	private final DataType dataType;
+
+	private final long[] dimensions;
+
+	/* the c, z or t axis of dimensions 2, 3, 4 */
+	private final int[] axes;
+
+	public ImagePlusBlocks( final ImagePlus imp )
+	{
+		if ( !supports( imp ) )
+			throw new IllegalArgumentException( "Image type or stack not supported." );
+
+		this.imp = imp;
+		this.stack = imp.getStack();
+		this.dataType = dataType( imp );
+
+		final long[] dims = new long[ 5 ];
+		final int[] extraAxes = new int[ 3 ];
+		int n = 0;
+		dims[ n++ ] = imp.getWidth();
+		dims[ n++ ] = imp.getHeight();
+		if ( imp.getNChannels() > 1 )
+		{
+			extraAxes[ n - 2 ] = C;
+			dims[ n++ ] = imp.getNChannels();
+		}
+		if ( imp.getNSlices() > 1 )
+		{
+			extraAxes[ n - 2 ] = Z;
+			dims[ n++ ] = imp.getNSlices();
+		}
+		if ( imp.getNFrames() > 1 )
+		{
+			extraAxes[ n - 2 ] = T;
+			dims[ n++ ] = imp.getNFrames();
+		}
+
+		this.dimensions = new long[ n ];
+		System.arraycopy( dims, 0, dimensions, 0, n );
+		this.axes = new int[ n - 2 ];
+		System.arraycopy( extraAxes, 0, axes, 0, n - 2 );
+	}
+
+	/**
+	 * Whether blocks of this image can be read from its pixel arrays.  Virtual
+	 * stacks are not supported because every access to their pixels may load
+	 * a slice.
+	 *
+	 * @param imp the image
+	 * @return true if supported
+	 */
+	public static boolean supports( final ImagePlus imp )
+	{
+		if ( imp == null || imp.getStack().isVirtual() )
+			return false;
+
+		if ( imp.getStackSize() != imp.getNChannels() * imp.getNSlices() * imp.getNFrames() )
+			return false;
+
+		return dataType( imp ) != null;
+	}
+
+	/**
+	 * Returns the N5 data type for an {@link ImagePlus}, RGB is stored as
+	 * {@link DataType#UINT32}.
+	 *
+	 * @param imp the image
+	 * @return the data type or null if not supported
+	 */
+	public static DataType dataType( final ImagePlus imp )
+	{
+		switch ( imp.getType() )
+		{
+		case ImagePlus.GRAY8:
+		case ImagePlus.COLOR_256:
+			return DataType.UINT8;
+		case ImagePlus.GRAY16:
+			return DataType.UINT16;
+		case ImagePlus.GRAY32:
+			return DataType.FLOAT32;
+		case ImagePlus.COLOR_RGB:
+			return DataType.UINT32;
+		default:
+			return null;
+		}
+	}
+
+	public DataType getDataType()
+	{
+		return dataType;
+	}
+
+	public long[] getDimensions()
+	{
+		return dimensions.clone();
+	}
+
+	/**
+	 * Copies one block of the image into a new {@link DataBlock}.  Blocks at
+	 * the upper border are truncated.
+	 *
+	 * @param blockSize the block size
+	 * @param gridPosition the grid position of the block
+	 * @return the data block
+	 */
+	public DataBlock< ? > createDataBlock( final int[] blockSize, final long[] gridPosition )
+	{
+		final int nd = dimensions.length;
+		final int[] min = new int[ nd ];
+		final int[] size = new int[ nd ];
+		for ( int d = 0; d < nd; d++ )
+		{
+			min[ d ] = ( int ) ( gridPosition[ d ] * blockSize[ d ] );
+			size[ d ] = ( int ) Math.min( blockSize[ d ], dimensions[ d ] - min[ d ] );
+		}
+
+		final int width = imp.getWidth();
+		final int height = imp.getHeight();
+		final int bw = size[ 0 ];
+		final int bh = size[ 1 ];
+		final int planeSize = bw * bh;
+
+		final int[] planesSize = new int[ nd - 2 ];
+		int numPlanes = 1;
+		for ( int d = 2; d < nd; d++ )
+		{
+			planesSize[ d - 2 ] = size[ d ];
+			numPlanes *= size[ d ];
+		}
+
+		// a block that is exactly one slice wraps the slice's pixels
+		if ( numPlanes == 1 && bw == width && bh == height )
+			return wrap( getPixels( min, new int[ nd - 2 ] ), size, gridPosition );
+
+		final DataBlock< ? > block = dataType.createDataBlock( size, gridPosition );
+		final Object data = block.getData();
+		final int[] plane = new int[ nd - 2 ];
+		for ( int p = 0; p < numPlanes; p++ )
+		{
+			IntervalIndexer.indexToPosition( p, planesSize, plane );
+			final Object pixels = getPixels( min, plane );
+			final int offset = p * planeSize;
+			if ( bw == width )
+				System.arraycopy( pixels, min[ 1 ] * width, data, offset, planeSize );
+			else
+				for ( int y = 0; y < bh; y++ )
+					System.arraycopy( pixels, ( min[ 1 ] + y ) * width + min[ 0 ], data, offset + y * bw, bw );
+		}
+		return block;
+	}
+
+	/**
+	 * Creates the dataset and writes all blocks.
+	 *
+	 * @param n5 the writer
+	 * @param dataset the dataset
+	 * @param blockSize the block size
+	 * @param compression the compression
+	 * @throws IOException io
+	 */
+	public void save(
+			final N5Writer n5,
+			final String dataset,
+			final int[] blockSize,
+			final Compression compression ) throws IOException
+	{
+		final DatasetAttributes attributes = new DatasetAttributes( dimensions, blockSize, dataType, compression );
+		n5.createDataset( dataset, attributes );
+
+		final long[] gridDimensions = N5BlockUtils.gridDimensions( dimensions, blockSize );
+		final long numBlocks = Intervals.numElements( gridDimensions );
+		for ( long i = 0; i < numBlocks; i++ )
+			n5.writeBlock( dataset, attributes, createDataBlock( blockSize, N5BlockUtils.gridPosition( i, gridDimensions ) ) );
+	}
+
+	/**
+	 * Creates the dataset and writes all blocks in parallel.
+	 *
+	 * @param n5 the writer
+	 * @param dataset the dataset
+	 * @param blockSize the block size
+	 * @param compression the compression
+	 * @param exec the executor service
+	 * @throws IOException io
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException execution
+	 */
+	public void save(
+			final N5Writer n5,
+			final String dataset,
+			final int[] blockSize,
+			final Compression compression,
+			final ExecutorService exec ) throws IOException, InterruptedException, ExecutionException
+	{
+		final DatasetAttributes attributes = new DatasetAttributes( dimensions, blockSize, dataType, compression );
+		n5.createDataset( dataset, attributes );
+
+		final long[] gridDimensions = N5BlockUtils.gridDimensions( dimensions, blockSize );
+		final long numBlocks = Intervals.numElements( gridDimensions );
+		final List< Future< ? > > futures = new ArrayList<>();
+		for ( long i = 0; i < numBlocks; i++ )
+		{
+			final long[] gridPosition = N5BlockUtils.gridPosition( i, gridDimensions );
+			futures.add( exec.submit( () -> {
+				n5.writeBlock( dataset, attributes, createDataBlock( blockSize, gridPosition ) );
+				return null;
+			} ) );
+		}
+
+		for ( final Future< ? > f : futures )
+			f.get();
+	}
+
+	private Object getPixels( final int[] min, final int[] plane )
+	{
+		final int[] czt = new int[ 3 ];
+		for ( int i = 0; i < axes.length; i++ )
+			czt[ axes[ i ] ] = min[ i + 2 ] + plane[ i ];
+
+		final int stackIndex = 1 + czt[ C ] + imp.getNChannels() * ( czt[ Z ] + imp.getNSlices() * czt[ T ] );
+		return stack.getPixels( stackIndex );
+	}
+
+	private DataBlock< ? > wrap( final Object pixels, final int[] size, final long[] gridPosition )
+	{
+		switch ( dataType )
+		{
+		case UINT8:
+			return new ByteArrayDataBlock( size, gridPosition, ( byte[] ) pixels );
+		case UINT16:
+			return new ShortArrayDataBlock( size, gridPosition, ( short[] ) pixels );
+		case FLOAT32:
+			return new FloatArrayDataBlock( size, gridPosition, ( float[] ) pixels );
+		default:
+			return new IntArrayDataBlock( size, gridPosition, ( int[] ) pixels );
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Helpers for creating N5 {@link DataBlock}s directly from imglib2 images.
+ */
+public class N5BlockUtils
+{
+	/**
+	 * Returns the size in bytes of a single element of the given type.
+	 *
+	 * @param dataType the data type
+	 * @return bytes per element
+	 */
+	public static int bytesPerElement( final DataType dataType )
+	{
+		switch ( dataType )
+		{
+		case UINT8:
+		case INT8:
+			return 1;
+		case UINT16:
+		case INT16:
+			return 2;
+		case UINT32:
+		case INT32:
+		case FLOAT32:
+			return 4;
+		case UINT64:
+		case INT64:
+		case FLOAT64:
+			return 8;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the N5 data type for an imglib2 type.  {@link ARGBType} is
+	 * stored as {@link DataType#UINT32}.
+	 *
+	 * @param type the imglib2 type
+	 * @return the data type
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static DataType dataType( final NativeType< ? > type )
+	{
+		if ( type instanceof ARGBType )
+			return DataType.UINT32;
+
+		return N5Utils.dataType( ( NativeType ) type );
+	}
+
+	/**
+	 * Returns the number of blocks along every dimension of a dataset.
+	 *
+	 * @param dimensions the dataset dimensions
+	 * @param blockSize the block size
+	 * @return the grid dimensions
+	 */
+	public static long[] gridDimensions( final long[] dimensions, final int[] blockSize )
+	{
+		final long[] gridDimensions = new long[ dimensions.length ];
+		for ( int d = 0; d < dimensions.length; d++ )
+			gridDimensions[ d ] = ( dimensions[ d ] + blockSize[ d ] - 1 ) / blockSize[ d ];
+
+		return gridDimensions;
+	}
+
+	/**
+	 * Returns the grid position of the block with the given flat index.
+	 *
+	 * @param index the flat index of the block
+	 * @param gridDimensions the grid dimensions
+	 * @return the grid position
+	 */
+	public static long[] gridPosition( final long index, final long[] gridDimensions )
+	{
+		final long[] gridPosition = new long[ gridDimensions.length ];
+		IntervalIndexer.indexToPosition( index, gridDimensions, gridPosition );
+		return gridPosition;
+	}
+
+	/**
+	 * Copies one block of the source image into a new {@link DataBlock}.
+	 * Blocks at the upper border of the source are truncated.
+	 *
+	 * @param <T> the image type
+	 * @param source the source image
+	 * @param dataType the N5 data type that corresponds to {@code T}
+	 * @param blockSize the block size
+	 * @param gridPosition the grid position of the block
+	 * @return the data block
+	 */
+	public static < T extends NativeType< T > > DataBlock< ? > createDataBlock(
+			final RandomAccessibleInterval< T > source,
+			final DataType dataType,
+			final int[] blockSize,
+			final long[] gridPosition )
+	{
+		final int nd = source.numDimensions();
+		final long[] min = new long[ nd ];
+		final long[] max = new long[ nd ];
+		final int[] size = new int[ nd ];
+		for ( int d = 0; d < nd; d++ )
+		{
+			min[ d ] = source.min( d ) + gridPosition[ d ] * blockSize[ d ];
+			max[ d ] = Math.min( source.max( d ), min[ d ] + blockSize[ d ] - 1 );
+			size[ d ] = ( int ) ( max[ d ] - min[ d ] + 1 );
+		}
+
+		final DataBlock< ? > block = dataType.createDataBlock( size, gridPosition );
+		final RandomAccessibleInterval< T > region = Views.interval( source, new FinalInterval( min, max ) );
+		if ( Util.getTypeFromInterval( region ) instanceof ARGBType )
+			copyARGB( region, wrap( block, dataType, Intervals.dimensionsAsLongArray( region ) ) );
+		else
+			copy( region, wrap( block, dataType, Intervals.dimensionsAsLongArray( region ) ) );
+
+		return block;
+	}
+
+	/**
+	 * Wraps the primitive array of a {@link DataBlock} as an image of the
+	 * imglib2 type that corresponds to the given {@link DataType}.
+	 *
+	 * @param <T> the image type
+	 * @param block the data block
+	 * @param dataType the data type of the block
+	 * @param dimensions the dimensions of the block
+	 * @return the wrapped image
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static < T extends NativeType< T > > RandomAccessibleInterval< T > wrap(
+			final DataBlock< ? > block,
+			final DataType dataType,
+			final long[] dimensions )
+	{
+		final Object data = block.getData();
+		switch ( dataType )
+		{
+		case UINT8:
+			return ( RandomAccessibleInterval ) ArrayImgs.unsignedBytes( ( byte[] ) data, dimensions );
+		case INT8:
+			return ( RandomAccessibleInterval ) ArrayImgs.bytes( ( byte[] ) data, dimensions );
+		case UINT16:
+			return ( RandomAccessibleInterval ) ArrayImgs.unsignedShorts( ( short[] ) data, dimensions );
+		case INT16:
+			return ( RandomAccessibleInterval ) ArrayImgs.shorts( ( short[] ) data, dimensions );
+		case UINT32:
+			return ( RandomAccessibleInterval ) ArrayImgs.unsignedInts( ( int[] ) data, dimensions );
+		case INT32:
+			return ( RandomAccessibleInterval ) ArrayImgs.ints( ( int[] ) data, dimensions );
+		case UINT64:
+			return ( RandomAccessibleInterval ) ArrayImgs.unsignedLongs( ( long[] ) data, dimensions );
+		case INT64:
+			return ( RandomAccessibleInterval ) ArrayImgs.longs( ( long[] ) data, dimensions );
+		case FLOAT32:
+			return ( RandomAccessibleInterval ) ArrayImgs.floats( ( float[] ) data, dimensions );
+		case FLOAT64:
+			return ( RandomAccessibleInterval ) ArrayImgs.doubles( ( double[] ) data, dimensions );
+		default:
+			throw new IllegalArgumentException( "Data type " + dataType + " not supported." );
+		}
+	}
+
+	private static < T extends NativeType< T > > void copy(
+			final RandomAccessibleInterval< T > source,
+			final RandomAccessibleInterval< T > target )
+	{
+		final Cursor< T > sourceCursor = Views.flatIterable( source ).cursor();
+		final Cursor< T > targetCursor = Views.flatIterable( target ).cursor();
+		while ( sourceCursor.hasNext() )
+			targetCursor.next().set( sourceCursor.next() );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static void copyARGB(
+			final RandomAccessibleInterval< ? > source,
+			final RandomAccessibleInterval< ? > target )
+	{
+		final Cursor< ARGBType > sourceCursor = Views.flatIterable( ( RandomAccessibleInterval< ARGBType > ) source ).cursor();
+		final Cursor< UnsignedIntType > targetCursor = Views.flatIterable( ( RandomAccessibleInterval< UnsignedIntType > ) target ).cursor();
+		while ( sourceCursor.hasNext() )
+			targetCursor.next().set( sourceCursor.next().get() & 0xffffffffL );
+	}
+}
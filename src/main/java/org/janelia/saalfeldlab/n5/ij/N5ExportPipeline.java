@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Writer;
+
+import ij.ImagePlus;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.imageplus.ImagePlusImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Writes an image to an N5 dataset in two stages that run on separate thread
+ * pools: extracting blocks from the image (CPU bound), and compressing and
+ * writing them (mostly latency bound for cloud storage).  The number of blocks
+ * that have been extracted but not yet written is bounded, so a slow writer
+ * stage holds back the extractors instead of filling the memory.
+ * <p>
+ * Compression happens inside {@link N5Writer#writeBlock}, so it runs in the
+ * writer stage.  Give the writer stage more threads than there are processors
+ * when writing to high latency storage.
+ */
+public class N5ExportPipeline
+{
+	private final int extractThreads;
+
+	private final int writeThreads;
+
+	private final int queueCapacity;
+
+	/**
+	 * @param extractThreads number of threads that extract blocks
+	 * @param writeThreads number of threads that compress and write blocks
+	 * @param queueCapacity the maximum number of extracted blocks waiting to be written
+	 */
+	public N5ExportPipeline( final int extractThreads, final int writeThreads, final int queueCapacity )
+	{
+		this.extractThreads = Math.max( 1, extractThreads );
+		this.writeThreads = Math.max( 1, writeThreads );
+		this.queueCapacity = Math.max( 1, queueCapacity );
+	}
+
+	/**
+	 * Creates a pipeline with a queue of twice the number of writer threads.
+	 *
+	 * @param extractThreads number of threads that extract blocks
+	 * @param writeThreads number of threads that compress and write blocks
+	 */
+	public N5ExportPipeline( final int extractThreads, final int writeThreads )
+	{
+		this( extractThreads, writeThreads, 2 * writeThreads );
+	}
+
+	/**
+	 * The default number of writer threads for a number of export threads.
+	 * Cloud storage gets four writers per thread to hide request latency.
+	 *
+	 * @param nThreads the number of export threads
+	 * @param cloud whether the target is cloud storage
+	 * @return the number of writer threads
+	 */
+	public static int defaultWriteThreads( final int nThreads, final boolean cloud )
+	{
+		return cloud ? 4 * nThreads : nThreads;
+	}
+
+	/**
+	 * Creates the dataset and writes all blocks of an image.
+	 *
+	 * @param <T> the image type
+	 * @param source the image
+	 * @param n5 the writer
+	 * @param dataset the dataset
+	 * @param blockSize the block size
+	 * @param compression the compression
+	 * @throws IOException if a block could not be written
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException if a block could not be extracted
+	 */
+	public < T extends NativeType< T > > void save(
+			final RandomAccessibleInterval< T > source,
+			final N5Writer n5,
+			final String dataset,
+			final int[] blockSize,
+			final Compression compression ) throws IOException, InterruptedException, ExecutionException
+	{
+		final RandomAccessibleInterval< T > zeroMin = Views.zeroMin( source );
+		final DataType dataType = N5BlockUtils.dataType( Util.getTypeFromInterval( zeroMin ) );
+		save( Intervals.dimensionsAsLongArray( zeroMin ), dataType, n5, dataset, blockSize, compression,
+				gridPosition -> N5BlockUtils.createDataBlock( zeroMin, dataType, blockSize, gridPosition ) );
+	}
+
+	/**
+	 * Creates the dataset and writes all blocks of an {@link ImagePlus}.  Blocks
+	 * are copied from the pixel arrays if {@link ImagePlusBlocks} supports the
+	 * image.
+	 *
+	 * @param imp the image
+	 * @param n5 the writer
+	 * @param dataset the dataset
+	 * @param blockSize the block size
+	 * @param compression the compression
+	 * @throws IOException if a block could not be written
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException if a block could not be extracted
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public void save(
+			final ImagePlus imp,
+			final N5Writer n5,
+			final String dataset,
+			final int[] blockSize,
+			final Compression compression ) throws IOException, InterruptedException, ExecutionException
+	{
+		if ( ImagePlusBlocks.supports( imp ) )
+		{
+			final ImagePlusBlocks blocks = new ImagePlusBlocks( imp );
+			save( blocks.getDimensions(), blocks.getDataType(), n5, dataset, blockSize, compression,
+					gridPosition -> blocks.createDataBlock( blockSize, gridPosition ) );
+		}
+		else
+			save( ( RandomAccessibleInterval ) ImagePlusImgs.from( imp ), n5, dataset, blockSize, compression );
+	}
+
+	private void save(
+			final long[] dimensions,
+			final DataType dataType,
+			final N5Writer n5,
+			final String dataset,
+			final int[] blockSize,
+			final Compression compression,
+			final Function< long[], DataBlock< ? > > extract ) throws IOException, InterruptedException, ExecutionException
+	{
+		final DatasetAttributes attributes = new DatasetAttributes( dimensions, blockSize, dataType, compression );
+		n5.createDataset( dataset, attributes );
+
+		final long[] gridDimensions = N5BlockUtils.gridDimensions( dimensions, blockSize );
+		final long numBlocks = Intervals.numElements( gridDimensions );
+
+		final AtomicLong nextBlock = new AtomicLong();
+		final AtomicReference< Exception > writeError = new AtomicReference<>();
+		final Semaphore queue = new Semaphore( queueCapacity );
+
+		final ExecutorService extractors = Executors.newFixedThreadPool( extractThreads );
+		final ExecutorService writers = Executors.newFixedThreadPool( writeThreads );
+		try
+		{
+			final List< Future< ? > > futures = new ArrayList<>();
+			for ( int i = 0; i < extractThreads; i++ )
+			{
+				futures.add( extractors.submit( () -> {
+					long index;
+					while ( writeError.get() == null && ( index = nextBlock.getAndIncrement() ) < numBlocks )
+					{
+						queue.acquire();
+						final DataBlock< ? > block;
+						try
+						{
+							block = extract.apply( N5BlockUtils.gridPosition( index, gridDimensions ) );
+						}
+						catch ( final RuntimeException e )
+						{
+							queue.release();
+							throw e;
+						}
+
+						writers.execute( () -> {
+							try
+							{
+								if ( writeError.get() == null )
+									n5.writeBlock( dataset, attributes, block );
+							}
+							catch ( final Exception e )
+							{
+								writeError.compareAndSet( null, e );
+							}
+							finally
+							{
+								queue.release();
+							}
+						} );
+					}
+					return null;
+				} ) );
+			}
+
+			for ( final Future< ? > f : futures )
+				f.get();
+
+			writers.shutdown();
+			writers.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+		}
+		finally
+		{
+			extractors.shutdownNow();
+			writers.shutdownNow();
+		}
+
+		final Exception e = writeError.get();
+		if ( e instanceof IOException )
+			throw ( IOException ) e;
+		else if ( e != null )
+			throw new IOException( e );
+	}
+}
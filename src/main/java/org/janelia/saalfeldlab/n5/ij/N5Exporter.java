@@ -34,16 +34,13 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 
 import org.janelia.saalfeldlab.googlecloud.GoogleCloudStorageURI;
+import org.janelia.saalfeldlab.n5.AbstractGsonReader;
 import org.janelia.saalfeldlab.n5.Compression;
-import org.janelia.saalfeldlab.n5.GzipCompression;
-import org.janelia.saalfeldlab.n5.Lz4Compression;
+import org.janelia.saalfeldlab.n5.N5ContainerIndex;
 import org.janelia.saalfeldlab.n5.N5Writer;
-import org.janelia.saalfeldlab.n5.RawCompression;
-import org.janelia.saalfeldlab.n5.XzCompression;
-import org.janelia.saalfeldlab.n5.blosc.BloscCompression;
+import org.janelia.saalfeldlab.n5.ZarrConsolidatedMetadata;
 import org.janelia.saalfeldlab.n5.dataaccess.DataAccessException;
 import org.janelia.saalfeldlab.n5.dataaccess.DataAccessFactory;
 import org.janelia.saalfeldlab.n5.dataaccess.DataAccessType;
@@ -59,6 +56,7 @@ import org.janelia.saalfeldlab.n5.metadata.N5Metadata;
 import org.janelia.saalfeldlab.n5.metadata.N5MetadataWriter;
 import org.janelia.saalfeldlab.n5.metadata.N5SingleScaleMetadata;
 import org.janelia.saalfeldlab.n5.ui.N5MetadataSpecDialog;
+import org.janelia.saalfeldlab.n5.zarr.N5ZarrReader;
 import org.scijava.ItemVisibility;
 import org.scijava.app.StatusService;
 import org.scijava.command.Command;
@@ -73,8 +71,11 @@ import ncsa.hdf.hdf5lib.exceptions.HDF5FileNotFoundException;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.img.imageplus.ImagePlusImgs;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
 @Plugin(type = Command.class, menuPath = "File>Save As>Export N5")
@@ -85,6 +86,17 @@ public class N5Exporter implements Command, WindowListener {
 	public static final String LZ4_COMPRESSION = "lz4";
 	public static final String XZ_COMPRESSION = "xz";
 	public static final String BLOSC_COMPRESSION = "blosc";
+	public static final String AUTO_COMPRESSION = "auto";
+
+	public static final String AUTO_SMALLEST = "smallest size";
+	public static final String AUTO_FASTEST_WRITE = "fastest write";
+	public static final String AUTO_FASTEST_READ = "fastest read";
+
+	public static final String BLOSC_NOSHUFFLE = "noshuffle";
+	public static final String BLOSC_SHUFFLE = "shuffle";
+	public static final String BLOSC_BITSHUFFLE = "bitshuffle";
+
+	public static final String AUTO_BLOCK_SIZE = "auto";
 
 	public static final String NONE = "None";
 
@@ -109,15 +121,67 @@ public class N5Exporter implements Command, WindowListener {
 			description = "This argument is ignored if the N5ViewerMetadata style is selected")
 	private String n5Dataset;
 
-	@Parameter(label = "Block size")
+	@Parameter(
+			label = "Block size",
+			description = "Comma-separated block size, or \"auto\" to choose one from the image shape and container type.")
 	private String blockSizeArg;
 
+	@Parameter(
+			label = "Auto block size target (MiB)",
+			required = false,
+			min = "0",
+			description = "Target size of a compressed block when the block size is \"auto\". "
+					+ "0 uses 1 MiB for file systems and HDF5, 8 MiB for cloud storage.")
+	private double blockSizeTargetMiB = 0;
+
 	@Parameter(
 			label = "Compresstion",
-			choices = {GZIP_COMPRESSION, RAW_COMPRESSION, LZ4_COMPRESSION, XZ_COMPRESSION, BLOSC_COMPRESSION},
+			choices = {GZIP_COMPRESSION, RAW_COMPRESSION, LZ4_COMPRESSION, XZ_COMPRESSION, BLOSC_COMPRESSION, AUTO_COMPRESSION},
 			style = "listBox")
 	private String compressionArg = GZIP_COMPRESSION;
 
+	@Parameter(
+			label = "Auto compression goal",
+			required = false,
+			description = "What the auto compression choice optimizes for.",
+			choices = {AUTO_SMALLEST, AUTO_FASTEST_WRITE, AUTO_FASTEST_READ})
+	private String autoCompressionGoal = AUTO_SMALLEST;
+
+	@Parameter(
+			label = "Auto compression time budget (s)",
+			required = false,
+			min = "0",
+			description = "Time allowed for benchmarking codecs when the auto compression choice is selected.")
+	private double autoCompressionBudget = CompressionAutoTuner.DEFAULT_TIME_BUDGET_MILLIS / 1000.0;
+
+	@Parameter(
+			label = "Compression level",
+			required = false,
+			min = "-1",
+			max = "9",
+			description = "Level for gzip (0-9), xz (0-9) and blosc (0-9). -1 uses the codec default.")
+	private int compressionLevel = -1;
+
+	@Parameter(
+			label = "Blosc compressor",
+			required = false,
+			choices = {"blosclz", "lz4", "lz4hc", "zlib", "zstd"})
+	private String bloscCompressor = "blosclz";
+
+	@Parameter(
+			label = "Blosc shuffle",
+			required = false,
+			choices = {BLOSC_NOSHUFFLE, BLOSC_SHUFFLE, BLOSC_BITSHUFFLE})
+	private String bloscShuffle = BLOSC_SHUFFLE;
+
+	@Parameter(
+			label = "Blosc threads",
+			required = false,
+			min = "1",
+			max = "64",
+			description = "Threads used by blosc per block. Stored in the attributes of every dataset.")
+	private int bloscThreads = 1;
+
 //    @Parameter( label = "Type",
 //    			choices = { "Auto", "N5", "Zarr", "HDF5" },
 //    			style="listBox" )
@@ -136,6 +200,29 @@ public class N5Exporter implements Command, WindowListener {
 	@Parameter(label = "Thread count", required = false, min = "1", max = "64")
 	private int nThreads = 1;
 
+	@Parameter(
+			label = "Writer thread count",
+			required = false,
+			min = "0",
+			max = "256",
+			description = "Threads that compress and write blocks when the thread count is greater than one. "
+					+ "0 uses the thread count, or four times as many for cloud storage.")
+	private int nWriterThreads = 0;
+
+	@Parameter(
+			label = "Consolidate zarr metadata",
+			required = false,
+			description = "Write the metadata of all groups and arrays to .zmetadata after a zarr export, "
+					+ "so that the container opens with a single read. An existing .zmetadata is always updated.")
+	private boolean consolidateZarrMetadata = false;
+
+	@Parameter(
+			label = "Write n5 container index",
+			required = false,
+			description = "Write the paths and metadata of all groups and datasets to the root attributes after an n5 export, "
+					+ "so that the container opens with a single read. An existing index is always updated.")
+	private boolean writeContainerIndex = false;
+
 	private int[] blockSize;
 
 	private DataAccessType dataType;
@@ -180,6 +267,85 @@ public class N5Exporter implements Command, WindowListener {
 		this.compressionArg = compression;
 	}
 
+	/**
+	 * Set the options used when the compression is {@link #AUTO_COMPRESSION}.
+	 *
+	 * @param goal one of {@link #AUTO_SMALLEST}, {@link #AUTO_FASTEST_WRITE}, {@link #AUTO_FASTEST_READ}
+	 * @param timeBudgetSeconds the time allowed for benchmarking codecs
+	 */
+	public void setAutoCompressionOptions(final String goal, final double timeBudgetSeconds) {
+
+		this.autoCompressionGoal = goal;
+		this.autoCompressionBudget = timeBudgetSeconds;
+	}
+
+	/**
+	 * Set codec parameters.
+	 *
+	 * @param level the compression level for gzip, xz or blosc, -1 for the codec default
+	 * @param bloscCompressor the blosc compressor name (blosclz, lz4, lz4hc, zlib, zstd)
+	 * @param bloscShuffle one of {@link #BLOSC_NOSHUFFLE}, {@link #BLOSC_SHUFFLE}, {@link #BLOSC_BITSHUFFLE}
+	 * @param bloscThreads threads used by blosc per block, 1 by default
+	 */
+	public void setCompressionOptions(
+			final int level,
+			final String bloscCompressor,
+			final String bloscShuffle,
+			final int bloscThreads) {
+
+		this.compressionLevel = level;
+		this.bloscCompressor = bloscCompressor;
+		this.bloscShuffle = bloscShuffle;
+		this.bloscThreads = bloscThreads;
+	}
+
+	public void setNumThreads(final int nThreads) {
+
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Set the number of threads that compress and write blocks, 0 to derive it
+	 * from the thread count and container type.
+	 *
+	 * @param nWriterThreads the number of writer threads
+	 */
+	public void setNumWriterThreads(final int nWriterThreads) {
+
+		this.nWriterThreads = nWriterThreads;
+	}
+
+	/**
+	 * Set whether zarr exports write consolidated metadata (.zmetadata).
+	 *
+	 * @param consolidateZarrMetadata whether to consolidate zarr metadata
+	 */
+	public void setConsolidateZarrMetadata(final boolean consolidateZarrMetadata) {
+
+		this.consolidateZarrMetadata = consolidateZarrMetadata;
+	}
+
+	/**
+	 * Set whether n5 exports write a {@link N5ContainerIndex}.
+	 *
+	 * @param writeContainerIndex whether to write the container index
+	 */
+	public void setWriteContainerIndex(final boolean writeContainerIndex) {
+
+		this.writeContainerIndex = writeContainerIndex;
+	}
+
+	/**
+	 * Set the target compressed block size used when the block size is
+	 * {@link #AUTO_BLOCK_SIZE}.
+	 *
+	 * @param targetMiB the target size in MiB, 0 for the container default
+	 */
+	public void setAutoBlockSizeTarget(final double targetMiB) {
+
+		this.blockSizeTargetMiB = targetMiB;
+	}
+
 	public void setType(final String type) {
 
 		try {
@@ -242,12 +408,10 @@ public class N5Exporter implements Command, WindowListener {
 		impMetaWriterTypes.put(MetadataTemplateMapper.class, new ImagePlusMetadataTemplate(""));
 	}
 
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	public <T extends RealType<T> & NativeType<T>, M extends N5Metadata> void process() throws IOException, DataAccessException, InterruptedException, ExecutionException {
 
 		final N5Writer n5 = getWriter();
-		final Compression compression = getCompression();
-		blockSize = Arrays.stream(blockSizeArg.split(",")).mapToInt(x -> Integer.parseInt(x)).toArray();
 
 		N5MetadataWriter<M> writer = null;
 		if (!metadataStyle.equals(NONE)) {
@@ -259,10 +423,29 @@ public class N5Exporter implements Command, WindowListener {
 		if (metadataStyle.equals(NONE) ||
 				metadataStyle.equals(N5Importer.MetadataImageJKey) ||
 				metadataStyle.equals(N5Importer.MetadataCustomKey)) {
+			final RandomAccessibleInterval impImg = ImagePlusImgs.from(image);
+			blockSize = getBlockSize(impImg, AutoBlockSize.resolution(image));
+			final Compression compression = getCompression(impImg);
 			write(n5, compression, writer);
 		} else {
+			final Img<T> img = ImageJFunctions.wrap(image);
+			blockSize = getBlockSize(channel(img, 0), channelResolution(img));
+			final Compression compression = getCompression(channel(img, 0));
 			writeSplitChannels(n5, compression, writer);
 		}
+
+		if (n5 instanceof N5ZarrReader) {
+			final String basePath = ((N5ZarrReader)n5).getBasePath();
+			if (consolidateZarrMetadata || ZarrConsolidatedMetadata.exists(basePath))
+				ZarrConsolidatedMetadata.write(basePath);
+		} else if (n5 instanceof AbstractGsonReader) {
+			final N5ContainerIndex index = N5ContainerIndex.read(n5);
+			if (index != null) {
+				index.update(n5, n5Dataset, N5Importer.PARSERS);
+				index.write(n5);
+			} else if (writeContainerIndex)
+				N5ContainerIndex.reindex(n5, N5Importer.PARSERS);
+		}
 		n5.close();
 	}
 
@@ -271,7 +454,11 @@ public class N5Exporter implements Command, WindowListener {
 			final Compression compression,
 			final N5MetadataWriter<M> writer) throws IOException, InterruptedException, ExecutionException
 	{
-		N5IJUtils.save( image, n5, n5Dataset, blockSize, compression );
+		if (nThreads > 1)
+			pipeline().save(image, n5, n5Dataset, blockSize, compression);
+		else
+			N5IJUtils.save( image, n5, n5Dataset, blockSize, compression );
+
 		writeMetadata( n5, n5Dataset, writer );
 	}
 
@@ -283,12 +470,7 @@ public class N5Exporter implements Command, WindowListener {
 		final Img<T> img = ImageJFunctions.wrap(image);
 		String datasetString = "";
 		for (int c = 0; c < image.getNChannels(); c++) {
-			RandomAccessibleInterval<T> channelImg;
-			if (img.numDimensions() >= 4) {
-				channelImg = Views.hyperSlice(img, 2, c);
-			} else {
-				channelImg = img;
-			}
+			final RandomAccessibleInterval<T> channelImg = channel(img, c);
 
 			if (metadataStyle.equals(N5Importer.MetadataN5ViewerKey)) {
 				datasetString = String.format("%s/c%d/s0", n5Dataset, c);
@@ -300,7 +482,7 @@ public class N5Exporter implements Command, WindowListener {
 
 			if (nThreads > 1)
 			{
-				N5Utils.save( channelImg, n5, datasetString, blockSize, compression, Executors.newFixedThreadPool( nThreads ) );
+				pipeline().save(channelImg, n5, datasetString, blockSize, compression);
 			}
 			else
 			{
@@ -311,6 +493,28 @@ public class N5Exporter implements Command, WindowListener {
 		}
 	}
 
+	private N5ExportPipeline pipeline() {
+
+		return new N5ExportPipeline(nThreads, writerThreads());
+	}
+
+	private int writerThreads() {
+
+		if (nWriterThreads > 0)
+			return nWriterThreads;
+		else
+			return N5ExportPipeline.defaultWriteThreads(nThreads,
+					dataType == DataAccessType.AMAZON_S3 || dataType == DataAccessType.GOOGLE_CLOUD);
+	}
+
+	private static <T> RandomAccessibleInterval<T> channel(final RandomAccessibleInterval<T> img, final int c) {
+
+		if (img.numDimensions() >= 4)
+			return Views.hyperSlice(img, 2, c);
+		else
+			return img;
+	}
+
 	private <M extends N5Metadata> void writeMetadata(
 			final N5Writer n5,
 			final String datasetString,
@@ -349,22 +553,106 @@ public class N5Exporter implements Command, WindowListener {
 		}
 	}
 
-	private Compression getCompression() {
-
-		switch (compressionArg) {
-		case GZIP_COMPRESSION:
-			return new GzipCompression();
-		case LZ4_COMPRESSION:
-			return new Lz4Compression();
-		case XZ_COMPRESSION:
-			return new XzCompression();
-		case RAW_COMPRESSION:
-			return new RawCompression();
-		case BLOSC_COMPRESSION:
-			return new BloscCompression();
+	private <T extends NativeType<T>> int[] getBlockSize(final RandomAccessibleInterval<T> img, final double[] resolution) {
+
+		if (!blockSizeArg.trim().equalsIgnoreCase(AUTO_BLOCK_SIZE))
+			return Arrays.stream(blockSizeArg.split(",")).mapToInt(x -> Integer.parseInt(x.trim())).toArray();
+
+		final long targetBytes = blockSizeTargetMiB > 0
+				? (long)(blockSizeTargetMiB * (1 << 20))
+				: AutoBlockSize.defaultTargetBytes(dataType);
+
+		final double ratio;
+		if (compressionArg.equals(RAW_COMPRESSION) || dataType == DataAccessType.HDF5)
+			ratio = 1;
+		else
+			ratio = AutoBlockSize.DEFAULT_COMPRESSION_RATIO;
+
+		final int[] size = AutoBlockSize.blockSize(
+				Intervals.dimensionsAsLongArray(img),
+				N5BlockUtils.dataType(Util.getTypeFromInterval(img)),
+				resolution,
+				targetBytes,
+				ratio);
+
+		info("Block size: " + Arrays.toString(size));
+		return size;
+	}
+
+	/*
+	 * The resolution of the images written by writeSplitChannels
+	 */
+	private double[] channelResolution(final RandomAccessibleInterval<?> img) {
+
+		final double[] res = AutoBlockSize.resolution(image);
+		if (img.numDimensions() < 4 || res.length < 4)
+			return res;
+
+		final double[] channelRes = new double[res.length - 1];
+		for (int d = 0, i = 0; d < res.length; d++)
+			if (d != 2)
+				channelRes[i++] = res[d];
+
+		return channelRes;
+	}
+
+	private <T extends NativeType<T>> Compression getCompression(final RandomAccessibleInterval<T> img) {
+
+		if (compressionArg.equals(AUTO_COMPRESSION))
+			return autoCompression(img);
+
+		return N5IJUtils.createCompression(
+				compressionArg,
+				compressionLevel,
+				bloscCompressor,
+				bloscShuffleValue(bloscShuffle),
+				bloscThreads);
+	}
+
+	private static int bloscShuffleValue(final String shuffle) {
+
+		switch (shuffle) {
+		case BLOSC_NOSHUFFLE:
+			return N5IJUtils.BLOSC_NOSHUFFLE;
+		case BLOSC_BITSHUFFLE:
+			return N5IJUtils.BLOSC_BITSHUFFLE;
+		default:
+			return N5IJUtils.BLOSC_SHUFFLE;
+		}
+	}
+
+	private <T extends NativeType<T>> Compression autoCompression(final RandomAccessibleInterval<T> img) {
+
+		final CompressionAutoTuner.Goal goal;
+		switch (autoCompressionGoal) {
+		case AUTO_FASTEST_WRITE:
+			goal = CompressionAutoTuner.Goal.WRITE_SPEED;
+			break;
+		case AUTO_FASTEST_READ:
+			goal = CompressionAutoTuner.Goal.READ_SPEED;
+			break;
 		default:
-			return new RawCompression();
+			goal = CompressionAutoTuner.Goal.SIZE;
 		}
+
+		final CompressionAutoTuner tuner = new CompressionAutoTuner();
+		tuner.setTimeBudget((long)(1000 * autoCompressionBudget));
+
+		// rough throughputs, only used to weigh codec speed against transfer size
+		if (dataType == DataAccessType.AMAZON_S3 || dataType == DataAccessType.GOOGLE_CLOUD)
+			tuner.setStorageThroughput(50);
+		else
+			tuner.setStorageThroughput(500);
+
+		return tuner.tune(img, blockSize, goal, this::info);
+	}
+
+	private void info(final String message) {
+
+		if (log != null)
+			log.info(message);
+		else
+			System.out.println(message);
 	}
 
 	public N5Writer getWriter() throws IOException, DataAccessException
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Writer;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Writes any number of datasets derived from one source image in a single
+ * pass over the source.  Every source block is read once, and every pixel is
+ * passed to the {@link Converter} of each output, which fill the blocks of all
+ * outputs together.
+ * <p>
+ * <pre>
+ * new N5FusedWriter&lt;&gt;( argb )
+ *     .addOutput( "gray", new UnsignedByteType(), ( a, g ) -&gt; g.set( ARGBType.red( a.get() ) ) )
+ *     .addOutput( "mask", new UnsignedByteType(), ( a, m ) -&gt; m.set( isGray( a.get() ) ? 1 : 0 ) )
+ *     .save( n5, blockSize, compression );
+ * </pre>
+ *
+ * @param <S> the source type
+ */
+public class N5FusedWriter< S extends NativeType< S > >
+{
+	private final RandomAccessibleInterval< S > source;
+
+	private final List< Output< S, ? > > outputs = new ArrayList<>();
+
+	public N5FusedWriter( final RandomAccessibleInterval< S > source )
+	{
+		this.source = Views.zeroMin( source );
+	}
+
+	/**
+	 * Adds an output dataset.
+	 *
+	 * @param <T> the output type
+	 * @param dataset the dataset path
+	 * @param type an instance of the output type
+	 * @param converter sets the output value from a source value
+	 * @return this
+	 */
+	public < T extends NativeType< T > > N5FusedWriter< S > addOutput(
+			final String dataset,
+			final T type,
+			final Converter< ? super S, ? super T > converter )
+	{
+		outputs.add( new Output< S, T >( dataset, N5BlockUtils.dataType( type ), converter ) );
+		return this;
+	}
+
+	/**
+	 * Creates the output datasets and writes all blocks.
+	 *
+	 * @param n5 the writer
+	 * @param blockSize the block size
+	 * @param compression the compression
+	 * @throws IOException io
+	 */
+	public void save(
+			final N5Writer n5,
+			final int[] blockSize,
+			final Compression compression ) throws IOException
+	{
+		final List< DatasetAttributes > attributes = createDatasets( n5, blockSize, compression );
+		final long[] gridDimensions = N5BlockUtils.gridDimensions( Intervals.dimensionsAsLongArray( source ), blockSize );
+		final long numBlocks = Intervals.numElements( gridDimensions );
+		for ( long i = 0; i < numBlocks; i++ )
+			writeBlock( n5, attributes, blockSize, N5BlockUtils.gridPosition( i, gridDimensions ) );
+	}
+
+	/**
+	 * Creates the output datasets and writes all blocks in parallel.
+	 *
+	 * @param n5 the writer
+	 * @param blockSize the block size
+	 * @param compression the compression
+	 * @param exec the executor service
+	 * @throws IOException io
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException execution
+	 */
+	public void save(
+			final N5Writer n5,
+			final int[] blockSize,
+			final Compression compression,
+			final ExecutorService exec ) throws IOException, InterruptedException, ExecutionException
+	{
+		final List< DatasetAttributes > attributes = createDatasets( n5, blockSize, compression );
+		final long[] gridDimensions = N5BlockUtils.gridDimensions( Intervals.dimensionsAsLongArray( source ), blockSize );
+		final long numBlocks = Intervals.numElements( gridDimensions );
+
+		final List< Future< ? > > futures = new ArrayList<>();
+		for ( long i = 0; i < numBlocks; i++ )
+		{
+			final long[] gridPosition = N5BlockUtils.gridPosition( i, gridDimensions );
+			futures.add( exec.submit( () -> {
+				writeBlock( n5, attributes, blockSize, gridPosition );
+				return null;
+			} ) );
+		}
+
+		for ( final Future< ? > f : futures )
+			f.get();
+	}
+
+	private List< DatasetAttributes > createDatasets(
+			final N5Writer n5,
+			final int[] blockSize,
+			final Compression compression ) throws IOException
+	{
+		final long[] dimensions = Intervals.dimensionsAsLongArray( source );
+		final List< DatasetAttributes > attributes = new ArrayList<>();
+		for ( final Output< S, ? > output : outputs )
+		{
+			final DatasetAttributes attrs = new DatasetAttributes( dimensions, blockSize, output.dataType, compression );
+			n5.createDataset( output.dataset, attrs );
+			attributes.add( attrs );
+		}
+		return attributes;
+	}
+
+	private void writeBlock(
+			final N5Writer n5,
+			final List< DatasetAttributes > attributes,
+			final int[] blockSize,
+			final long[] gridPosition ) throws IOException
+	{
+		final int nd = source.numDimensions();
+		final long[] min = new long[ nd ];
+		final long[] max = new long[ nd ];
+		final int[] size = new int[ nd ];
+		final long[] dimensions = new long[ nd ];
+		for ( int d = 0; d < nd; d++ )
+		{
+			min[ d ] = gridPosition[ d ] * blockSize[ d ];
+			max[ d ] = Math.min( source.max( d ), min[ d ] + blockSize[ d ] - 1 );
+			size[ d ] = ( int ) ( max[ d ] - min[ d ] + 1 );
+			dimensions[ d ] = size[ d ];
+		}
+
+		final int numOutputs = outputs.size();
+		final DataBlock< ? >[] blocks = new DataBlock< ? >[ numOutputs ];
+		final Cursor< ? >[] targets = new Cursor< ? >[ numOutputs ];
+		for ( int i = 0; i < numOutputs; i++ )
+		{
+			final DataType dataType = outputs.get( i ).dataType;
+			blocks[ i ] = dataType.createDataBlock( size, gridPosition );
+			targets[ i ] = Views.flatIterable( N5BlockUtils.wrap( blocks[ i ], dataType, dimensions ) ).cursor();
+		}
+
+		final Cursor< S > sourceCursor = Views.flatIterable(
+				Views.interval( source, new FinalInterval( min, max ) ) ).cursor();
+		while ( sourceCursor.hasNext() )
+		{
+			final S s = sourceCursor.next();
+			for ( int i = 0; i < numOutputs; i++ )
+				outputs.get( i ).convert( s, targets[ i ].next() );
+		}
+
+		for ( int i = 0; i < numOutputs; i++ )
+			n5.writeBlock( outputs.get( i ).dataset, attributes.get( i ), blocks[ i ] );
+	}
+
+	private static class Output< S, T >
+	{
+		final String dataset;
+
+		final DataType dataType;
+
+		final Converter< ? super S, ? super T > converter;
+
+		Output( final String dataset, final DataType dataType, final Converter< ? super S, ? super T > converter )
+		{
+			this.dataset = dataset;
+			this.dataType = dataType;
+			this.converter = converter;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		void convert( final S source, final Object target )
+		{
+			converter.convert( source, ( T ) target );
+		}
+	}
+}
@@ -28,11 +28,17 @@ package org.janelia.saalfeldlab.n5.ij;
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.janelia.saalfeldlab.n5.Compression;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.Lz4Compression;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.XzCompression;
+import org.janelia.saalfeldlab.n5.blosc.BloscCompression;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.n5.metadata.ImageplusMetadata;
 import org.janelia.saalfeldlab.n5.metadata.N5ImagePlusMetadata;
@@ -42,7 +48,6 @@ import org.janelia.saalfeldlab.n5.metadata.N5MetadataWriter;
 
 import ij.ImagePlus;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.converter.Converters;
 import net.imglib2.exception.ImgLibException;
 import net.imglib2.img.cell.LazyCellImg;
 import net.imglib2.img.imageplus.ImagePlusImg;
@@ -62,6 +67,62 @@ import net.imglib2.view.Views;
  */
 public class N5IJUtils {
 
+	public static final int BLOSC_NOSHUFFLE = 0;
+	public static final int BLOSC_SHUFFLE = 1;
+	public static final int BLOSC_BITSHUFFLE = 2;
+
+	/**
+	 * Creates a {@link Compression} from its name and parameters.
+	 *
+	 * @param type one of "gzip", "raw", "lz4", "xz", "blosc"
+	 * @param level the compression level for gzip, xz or blosc, -1 for the codec default
+	 * @param bloscCompressor the blosc compressor name (blosclz, lz4, lz4hc, zlib, zstd)
+	 * @param bloscShuffle one of {@link #BLOSC_NOSHUFFLE}, {@link #BLOSC_SHUFFLE}, {@link #BLOSC_BITSHUFFLE}
+	 * @param bloscThreads the number of threads blosc uses per block
+	 * @return the compression
+	 */
+	public static Compression createCompression(
+			final String type,
+			final int level,
+			final String bloscCompressor,
+			final int bloscShuffle,
+			final int bloscThreads) {
+
+		switch (type) {
+		case N5Exporter.GZIP_COMPRESSION:
+			return level < 0 ? new GzipCompression() : new GzipCompression(Math.min(level, 9));
+		case N5Exporter.LZ4_COMPRESSION:
+			return new Lz4Compression();
+		case N5Exporter.XZ_COMPRESSION:
+			return level < 0 ? new XzCompression() : new XzCompression(Math.min(level, 9));
+		case N5Exporter.BLOSC_COMPRESSION:
+			return new BloscCompression(
+					bloscCompressor == null ? "blosclz" : bloscCompressor,
+					level < 0 ? 6 : Math.min(level, 9),
+					bloscShuffle,
+					0,
+					Math.max(1, bloscThreads));
+		case N5Exporter.RAW_COMPRESSION:
+		default:
+			return new RawCompression();
+		}
+	}
+
+	/**
+	 * Creates a {@link Compression} from its name and level, using byte
+	 * shuffled, single threaded blosclz for blosc.
+	 *
+	 * @param type one of "gzip", "raw", "lz4", "xz", "blosc"
+	 * @param level the compression level for gzip, xz or blosc, -1 for the codec default
+	 * @return the compression
+	 */
+	public static Compression createCompression(
+			final String type,
+			final int level) {
+
+		return createCompression(type, level, "blosclz", BLOSC_SHUFFLE, 1);
+	}
+
 	public static <T extends NativeType<T> & NumericType<T>> ImagePlus load(
 			final N5Reader n5,
 			final String dataset ) throws IOException, ImgLibException {
@@ -180,14 +241,17 @@ public class N5IJUtils {
 			final Compression compression,
 			final W metaWriter ) throws IOException
 	{
-		final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
-
-		N5Utils.save(
-				rai,
-				n5,
-				datasetName,
-				blockSize,
-				compression);
+		if (ImagePlusBlocks.supports(imp))
+			new ImagePlusBlocks(imp).save(n5, datasetName, blockSize, compression);
+		else {
+			final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
+			N5Utils.save(
+					rai,
+					n5,
+					datasetName,
+					blockSize,
+					compression);
+		}
 
 		if( metaWriter != null && metaWriter !=null )
 		{
@@ -200,6 +264,50 @@ public class N5IJUtils {
 		}
 	}
 
+	/**
+	 * Save an {@link ImagePlus} as an N5 dataset with the compression given by
+	 * its name and parameters (see
+	 * {@link #createCompression(String, int, String, int, int)}), blosc
+	 * compresses each block with a single thread.  Uses nThreads threads.
+	 *
+	 * @param imp the ImagePlus
+	 * @param n5 the writer
+	 * @param datasetName the dataset name
+	 * @param blockSize the block size
+	 * @param compressionType the compression type
+	 * @param level the compression level, -1 for the codec default
+	 * @param bloscCompressor the blosc compressor name
+	 * @param bloscShuffle the blosc shuffle mode
+	 * @param nThreads the number of threads
+	 * @throws IOException io
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException execution
+	 */
+	public static void save(
+			final ImagePlus imp,
+			final N5Writer n5,
+			final String datasetName,
+			final int[] blockSize,
+			final String compressionType,
+			final int level,
+			final String bloscCompressor,
+			final int bloscShuffle,
+			final int nThreads) throws IOException, InterruptedException, ExecutionException
+	{
+		final Compression compression = createCompression(
+				compressionType, level, bloscCompressor, bloscShuffle, 1);
+
+		if (nThreads > 1) {
+			final ExecutorService exec = Executors.newFixedThreadPool(nThreads);
+			try {
+				save(imp, n5, datasetName, blockSize, compression, exec);
+			} finally {
+				exec.shutdown();
+			}
+		} else
+			save(imp, n5, datasetName, blockSize, compression);
+	}
+
 	/**
 	 * Save and {@link ImagePlus} as an N5 dataset.  Parallelizes export using
 	 * an {@link ExecutorService}.
@@ -253,15 +361,18 @@ public class N5IJUtils {
 			final W metaWriter )
 					throws IOException, InterruptedException, ExecutionException
 	{
-		final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
-
-		N5Utils.save(
-				rai,
-				n5,
-				datasetName,
-				blockSize,
-				compression,
-				exec);
+		if (ImagePlusBlocks.supports(imp))
+			new ImagePlusBlocks(imp).save(n5, datasetName, blockSize, compression, exec);
+		else {
+			final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
+			N5Utils.save(
+					rai,
+					n5,
+					datasetName,
+					blockSize,
+					compression,
+					exec);
+		}
 
 		if( metaWriter != null && metaWriter !=null )
 		{
@@ -294,40 +405,8 @@ public class N5IJUtils {
 			final int[] blockSize,
 			final Compression compression) throws IOException {
 
-		final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
-
-		final RandomAccessibleInterval<UnsignedByteType> mask = Converters.convert(
-				(RandomAccessibleInterval<ARGBType>)rai,
-				(argb, uint8) -> {
-					final int argbValue = argb.get();
-					final int r = ARGBType.red(argbValue);
-					final int g = ARGBType.green(argbValue);
-					final int b = ARGBType.blue(argbValue);
-					if (r == g && g == b)
-						uint8.set(1);
-					else
-						uint8.set(0);
-				},
-				new UnsignedByteType());
-
-		final RandomAccessibleInterval<UnsignedByteType> gray = Converters.convert(
-				(RandomAccessibleInterval<ARGBType>)rai,
-				(argb, uint8) -> {
-					uint8.set(ARGBType.red(argb.get()));
-				},
-				new UnsignedByteType());
-
 		n5.createGroup(groupName);
-		N5Utils.save(
-				mask,
-				n5, groupName + "/mask",
-				blockSize,
-				compression);
-		N5Utils.save(
-				gray,
-				n5, groupName + "/gray",
-				blockSize,
-				compression);
+		maskedUnsignedByteWriter(imp, groupName).save(n5, blockSize, compression);
 	}
 
 	/**
@@ -354,41 +433,33 @@ public class N5IJUtils {
 			final Compression compression,
 			final ExecutorService exec) throws IOException, InterruptedException, ExecutionException {
 
-		final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
-
-		final RandomAccessibleInterval<UnsignedByteType> mask = Converters.convert(
-				(RandomAccessibleInterval<ARGBType>)rai,
-				(argb, uint8) -> {
-					final int argbValue = argb.get();
-					final int r = ARGBType.red(argbValue);
-					final int g = ARGBType.green(argbValue);
-					final int b = ARGBType.blue(argbValue);
-					if (r == g && g == b)
-						uint8.set(1);
-					else
-						uint8.set(0);
-				},
-				new UnsignedByteType());
+		n5.createGroup(groupName);
+		maskedUnsignedByteWriter(imp, groupName).save(n5, blockSize, compression, exec);
+	}
 
-		final RandomAccessibleInterval<UnsignedByteType> gray = Converters.convert(
-				(RandomAccessibleInterval<ARGBType>)rai,
-				(argb, uint8) -> {
-					uint8.set(ARGBType.red(argb.get()));
-				},
-				new UnsignedByteType());
+	/*
+	 * Unpacks every ARGB pixel once into both the mask and the gray block.
+	 */
+	private static N5FusedWriter<ARGBType> maskedUnsignedByteWriter(
+			final ImagePlus imp,
+			final String groupName) {
 
-		n5.createGroup(groupName);
-		N5Utils.save(
-				mask,
-				n5, groupName + "/mask",
-				blockSize,
-				compression,
-				exec);
-		N5Utils.save(
-				gray,
-				n5, groupName + "/gray",
-				blockSize,
-				compression,
-				exec);
+		final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
+		return new N5FusedWriter<ARGBType>(rai)
+				.addOutput(groupName + "/mask", new UnsignedByteType(),
+						(argb, uint8) -> {
+							final int argbValue = argb.get();
+							final int r = ARGBType.red(argbValue);
+							final int g = ARGBType.green(argbValue);
+							final int b = ARGBType.blue(argbValue);
+							if (r == g && g == b)
+								uint8.set(1);
+							else
+								uint8.set(0);
+						})
+				.addOutput(groupName + "/gray", new UnsignedByteType(),
+						(argb, uint8) -> {
+							uint8.set(ARGBType.red(argb.get()));
+						});
 	}
 }
@@ -36,7 +36,10 @@ import java.util.Map;
 import java.util.function.Function;
 
 import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.N5CachingReader;
 import org.janelia.saalfeldlab.n5.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.N5DiscoveryCache;
+import org.janelia.saalfeldlab.n5.N5KeyLister;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.converters.UnsignedShortLUTConverter;
 import org.janelia.saalfeldlab.n5.dataaccess.DataAccessException;
@@ -95,6 +98,9 @@ public class N5Importer implements PlugIn
 	public static final String MetadataCustomKey = "Custom";
 	public static final String MetadataDefaultKey = "Default";
 
+	// how long the readers of the dialog and importer remember attributes
+	public static final long ATTRIBUTES_CACHE_TTL_MS = 60000;
+
 	public static final N5MetadataParser<?>[] PARSERS = new N5MetadataParser[]{
 					new N5ImagePlusMetadata( "" ),
 					new N5CosemMetadata( "", null, null ),
@@ -193,6 +199,9 @@ public class N5Importer implements PlugIn
 					PARSERS );
 
 			selectionDialog.setTreeRenderer( new N5DatasetTreeCellRenderer( true ) );
+			selectionDialog.setDiscoveryCacheFun( N5DiscoveryCache::forContainer );
+			selectionDialog.setLazyLoading( N5Importer::isCloudContainer );
+			selectionDialog.setKeyListerFun( N5KeyLister::forContainer );
 
 			selectionDialog.setContainerPathUpdateCallback( x -> {
 				lastOpenedContainer = x;
@@ -650,7 +659,9 @@ public class N5Importer implements PlugIn
 			n5 = null;
 			try
 			{
-				n5 = new DataAccessFactory( type, n5BasePath ).createN5Reader( n5BasePath );
+				// discovery, parsing and opening the dataset share the attributes they read
+				n5 = N5CachingReader.wrap( new DataAccessFactory( type, n5BasePath ).createN5Reader( n5BasePath ),
+						ATTRIBUTES_CACHE_TTL_MS );
 
 				/*
 				 * Do we need this check?
@@ -695,6 +706,19 @@ public class N5Importer implements PlugIn
 		}
 	}
 
+	/**
+	 * @param n5Path the container path or link
+	 * @return true if the container is on Amazon S3 or Google cloud storage
+	 */
+	public static boolean isCloudContainer( final String n5Path )
+	{
+		if ( n5Path == null || n5Path.trim().isEmpty() )
+			return false;
+
+		final DataAccessType type = DataAccessType.detectType( n5Path.trim() );
+		return type == DataAccessType.AMAZON_S3 || type == DataAccessType.GOOGLE_CLOUD;
+	}
+
 	public static String h5DatasetPath( final String h5PathAndDataset )
 	{
 		return h5DatasetPath( h5PathAndDataset, false );
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+
+import org.janelia.saalfeldlab.n5.N5ContainerIndex;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.ZarrConsolidatedMetadata;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessException;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessFactory;
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessType;
+import org.janelia.saalfeldlab.n5.zarr.N5ZarrReader;
+import org.scijava.ItemVisibility;
+import org.scijava.command.Command;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Writes the index of a container so that it is discovered with a single
+ * read: a {@link N5ContainerIndex} for n5 containers, consolidated metadata
+ * for zarr containers.  HDF5 files are not indexed.
+ */
+@Plugin( type = Command.class, menuPath = "Plugins>N5>Reindex container" )
+public class N5Reindex implements Command
+{
+	@Parameter( visibility = ItemVisibility.MESSAGE, required = false )
+	private final String message = "Index all groups and datasets of a container";
+
+	@Parameter( label = "N5 root url" )
+	private String n5RootLocation;
+
+	@Parameter( required = false )
+	private LogService log;
+
+	public N5Reindex()
+	{
+	}
+
+	public N5Reindex( final String n5RootLocation )
+	{
+		this.n5RootLocation = n5RootLocation;
+	}
+
+	@Override
+	public void run()
+	{
+		try
+		{
+			process();
+		}
+		catch ( final IOException | DataAccessException e )
+		{
+			if ( log != null )
+				log.error( "Could not index " + n5RootLocation, e );
+			else
+				e.printStackTrace();
+		}
+	}
+
+	public void process() throws IOException, DataAccessException
+	{
+		final String path = n5RootLocation.trim();
+		final DataAccessType type = DataAccessType.detectType( path );
+		if ( type == null )
+			throw new DataAccessException( "Could not detect container type of " + path );
+
+		if ( type == DataAccessType.HDF5 )
+		{
+			info( "HDF5 files can not be indexed." );
+			return;
+		}
+
+		final N5Writer n5 = new DataAccessFactory( type, path ).createN5Writer( path );
+		try
+		{
+			if ( n5 instanceof N5ZarrReader )
+			{
+				ZarrConsolidatedMetadata.write( ( ( N5ZarrReader ) n5 ).getBasePath() );
+				info( "Wrote consolidated metadata of " + path );
+			}
+			else
+			{
+				final N5ContainerIndex index = N5ContainerIndex.reindex( n5, N5Importer.PARSERS );
+				info( "Indexed " + index.getPaths().size() + " groups and datasets of " + path );
+			}
+		}
+		finally
+		{
+			n5.close();
+		}
+	}
+
+	private void info( final String msg )
+	{
+		if ( log != null )
+			log.info( msg );
+		else
+			System.out.println( msg );
+	}
+}
@@ -25,18 +25,21 @@
  */
 package org.janelia.saalfeldlab.n5.metadata;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.google.gson.JsonElement;
+
 public class AutoDetectMetadata implements N5GsonMetadataParser< N5Metadata >
 {
 	private N5MetadataParser<?>[] parsers;
+	private MetadataParserIndex parserIndex;
 	private HashMap<String,Class<?>> keysToTypes;
 
 	public AutoDetectMetadata( final N5MetadataParser<?>[] parsers )
 	{
 		this.parsers = parsers;
+		parserIndex = new MetadataParserIndex( parsers );
 		keysToTypes = new HashMap<>();
 	}
 
@@ -57,11 +60,14 @@ public class AutoDetectMetadata implements N5GsonMetadataParser< N5Metadata >
 		return keysToTypes;
 	}
 
+	/**
+	 * Tries the parsers whose keys are in metaMap, in order, and returns the
+	 * first metadata parsed.
+	 */
 	@Override
 	public N5Metadata parseMetadata( final Map< String, Object > metaMap ) throws Exception
 	{
-		final ArrayList<Exception> elist = new ArrayList<>();
-		for( final N5MetadataParser< ? > p : parsers )
+		for( final N5MetadataParser< ? > p : parserIndex.candidates( metaMap ) )
 		{
 			try
 			{
@@ -69,17 +75,33 @@ public class AutoDetectMetadata implements N5GsonMetadataParser< N5Metadata >
 				if( meta != null )
 					return meta;
 			}
-			catch( final Exception e )
-			{
-				elist.add( e );
-			}
+			catch( final Exception e ) { }
 		}
+		return null;
+	}
 
-		for( final Exception e : elist )
+	@Override
+	public N5Metadata parseMetadataGson( final String dataset, final HashMap< String, JsonElement > map ) throws Exception
+	{
+		for( final N5MetadataParser< ? > p : parserIndex.candidates( map.keySet() ) )
 		{
-			e.printStackTrace();
+			if( !( p instanceof N5GsonMetadataParser ))
+				continue;
+
+			try
+			{
+				final N5Metadata meta = ( ( N5GsonMetadataParser< ? > ) p ).parseMetadataGson( dataset, map );
+				if( meta != null )
+					return meta;
+			}
+			catch( final Exception e ) { }
 		}
 		return null;
 	}
 
+	public N5MetadataParser< ? >[] getParsers()
+	{
+		return parsers;
+	}
+
 }
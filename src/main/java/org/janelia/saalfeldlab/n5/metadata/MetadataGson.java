@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.metadata;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+
+/**
+ * A {@link Gson} with the type adapters of {@link N5Metadata#getGsonBuilder()}
+ * that metadata parsers share, and its {@link TypeAdapter}s by class.  Both are
+ * thread safe, so parsers do not create a Gson for every node they parse.
+ */
+public final class MetadataGson
+{
+	public static final Gson GSON = N5Metadata.getGsonBuilder().create();
+
+	private static final ConcurrentHashMap< Class< ? >, TypeAdapter< ? > > adapters = new ConcurrentHashMap<>();
+
+	private MetadataGson() {}
+
+	@SuppressWarnings( "unchecked" )
+	public static < T > TypeAdapter< T > getAdapter( final Class< T > type )
+	{
+		return ( TypeAdapter< T > ) adapters.computeIfAbsent( type, GSON::getAdapter );
+	}
+
+	/**
+	 * Like {@link Gson#fromJson(JsonElement, Class)} with a cached adapter.
+	 *
+	 * @param <T> the type
+	 * @param json the json, may be null
+	 * @param type the class
+	 * @return the object, or null if json is null
+	 */
+	public static < T > T fromJson( final JsonElement json, final Class< T > type )
+	{
+		if ( json == null )
+			return null;
+
+		return getAdapter( type ).fromJsonTree( json );
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.metadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+
+/**
+ * Selects the {@link N5MetadataParser}s that can parse a node from the
+ * attribute keys the node has, so that parsers are not tried, and do not
+ * throw, on nodes that lack the keys they need.
+ * <p>
+ * A parser is a candidate if the node has every key of its
+ * {@link N5MetadataParser#requiredKeys()}, the keys its
+ * {@link N5MetadataParser#check(Map)} needs.  Parsers with no required keys
+ * are always candidates.  Candidates are returned in the order the parsers were
+ * given.
+ */
+public class MetadataParserIndex
+{
+	/**
+	 * The keys of dataset attributes, present for every dataset.
+	 */
+	public static final Set< String > DATASET_KEYS = datasetKeys();
+
+	private final N5MetadataParser< ? >[] parsers;
+
+	private final int[] numKeys;
+
+	private final HashMap< String, int[] > keyToParsers;
+
+	public MetadataParserIndex( final N5MetadataParser< ? >... parsers )
+	{
+		this.parsers = parsers;
+		numKeys = new int[ parsers.length ];
+
+		final HashMap< String, List< Integer > > index = new HashMap<>();
+		for ( int i = 0; i < parsers.length; i++ )
+		{
+			final Set< String > keys = parsers[ i ].requiredKeys();
+			if ( keys == null )
+				continue;
+
+			numKeys[ i ] = keys.size();
+			for ( final String k : keys )
+				index.computeIfAbsent( k, x -> new ArrayList<>() ).add( i );
+		}
+
+		keyToParsers = new HashMap<>();
+		for ( final Map.Entry< String, List< Integer > > e : index.entrySet() )
+			keyToParsers.put( e.getKey(), e.getValue().stream().mapToInt( Integer::intValue ).toArray() );
+	}
+
+	public N5MetadataParser< ? >[] getParsers()
+	{
+		return parsers;
+	}
+
+	/**
+	 * @param keys the attribute keys of a node
+	 * @return the parsers that may parse the node
+	 */
+	public List< N5MetadataParser< ? > > candidates( final Set< String > keys )
+	{
+		final int[] hits = new int[ parsers.length ];
+		for ( final String k : keys )
+		{
+			final int[] parserIndexes = keyToParsers.get( k );
+			if ( parserIndexes != null )
+				for ( final int i : parserIndexes )
+					hits[ i ]++;
+		}
+		return select( hits );
+	}
+
+	/**
+	 * Like {@link #candidates(Set)}, ignoring keys with null values.
+	 *
+	 * @param map the attributes of a node
+	 * @return the parsers that may parse the node
+	 */
+	public List< N5MetadataParser< ? > > candidates( final Map< String, ? > map )
+	{
+		final int[] hits = new int[ parsers.length ];
+		for ( final Map.Entry< String, ? > e : map.entrySet() )
+		{
+			if ( e.getValue() == null )
+				continue;
+
+			final int[] parserIndexes = keyToParsers.get( e.getKey() );
+			if ( parserIndexes != null )
+				for ( final int i : parserIndexes )
+					hits[ i ]++;
+		}
+		return select( hits );
+	}
+
+	/**
+	 * Selects parsers by the attributes a reader lists for a node, with the
+	 * dataset attribute keys added for datasets, as not every backend lists
+	 * them as attributes.  All parsers are candidates if the attributes can
+	 * not be listed.
+	 *
+	 * @param n5 the reader
+	 * @param path the path of the node
+	 * @return the parsers that may parse the node
+	 */
+	public List< N5MetadataParser< ? > > candidates( final N5Reader n5, final String path )
+	{
+		final Set< String > keys;
+		try
+		{
+			keys = new HashSet<>( n5.listAttributes( path ).keySet() );
+			if ( n5.datasetExists( path ) )
+				keys.addAll( DATASET_KEYS );
+		}
+		catch ( final Exception e )
+		{
+			return Arrays.asList( parsers );
+		}
+		return candidates( keys );
+	}
+
+	private List< N5MetadataParser< ? > > select( final int[] hits )
+	{
+		final List< N5MetadataParser< ? > > candidates = new ArrayList<>( 2 );
+		for ( int i = 0; i < parsers.length; i++ )
+			if ( hits[ i ] == numKeys[ i ] )
+				candidates.add( parsers[ i ] );
+
+		return candidates;
+	}
+
+	private static Set< String > datasetKeys()
+	{
+		final HashMap< String, Class< ? > > keys = new HashMap<>();
+		AbstractN5Metadata.addDatasetAttributeKeys( keys );
+		return Collections.unmodifiableSet( keys.keySet() );
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.metadata;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+
+/**
+ * The attributes of one node, read from the backend in one pass and shared
+ * by all metadata parsers that are tried on the node.  Meant for readers that
+ * are not {@link org.janelia.saalfeldlab.n5.AbstractGsonReader}s, such as
+ * HDF5, where every {@link N5Reader#getAttribute(String, String, Class)} is
+ * a separate request.
+ * <p>
+ * {@link #read(N5Reader, String)} lists the attributes, reads each with the
+ * class the reader lists for it, and reads the dataset attributes of
+ * datasets.  Values requested as another class are converted from json
+ * strings, or read again from the backend once.
+ */
+public class N5AttributeSnapshot
+{
+	private final N5Reader n5;
+
+	private final String path;
+
+	private final Map< String, Class< ? > > types;
+
+	private final HashMap< String, Object > values;
+
+	private final DatasetAttributes datasetAttributes;
+
+	private final Set< String > keys;
+
+	private N5AttributeSnapshot(
+			final N5Reader n5,
+			final String path,
+			final Map< String, Class< ? > > types,
+			final HashMap< String, Object > values,
+			final DatasetAttributes datasetAttributes )
+	{
+		this.n5 = n5;
+		this.path = path;
+		this.types = types;
+		this.values = values;
+		this.datasetAttributes = datasetAttributes;
+
+		final HashSet< String > keys = new HashSet<>( types.keySet() );
+		if ( datasetAttributes != null )
+			keys.addAll( MetadataParserIndex.DATASET_KEYS );
+
+		this.keys = Collections.unmodifiableSet( keys );
+	}
+
+	/**
+	 * Reads all attributes of a node.
+	 *
+	 * @param n5 the reader
+	 * @param path the path of the node
+	 * @return the snapshot
+	 * @throws IOException the exception
+	 */
+	public static N5AttributeSnapshot read( final N5Reader n5, final String path ) throws IOException
+	{
+		final Map< String, Class< ? > > types = n5.listAttributes( path );
+		final HashMap< String, Object > values = new HashMap<>();
+		for ( final Map.Entry< String, Class< ? > > e : types.entrySet() )
+		{
+			try
+			{
+				values.put( e.getKey(), n5.getAttribute( path, e.getKey(), e.getValue() ) );
+			}
+			catch ( final Exception ex ) { }
+		}
+
+		final DatasetAttributes datasetAttributes = n5.datasetExists( path ) ? n5.getDatasetAttributes( path ) : null;
+		return new N5AttributeSnapshot( n5, path, types, values, datasetAttributes );
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+
+	/**
+	 * @return the attribute keys, including the dataset attribute keys for datasets
+	 */
+	public Set< String > getKeys()
+	{
+		return keys;
+	}
+
+	public DatasetAttributes getDatasetAttributes()
+	{
+		return datasetAttributes;
+	}
+
+	/**
+	 * @param <T> the type
+	 * @param key the attribute key
+	 * @param type the class
+	 * @return the attribute, or null if the node does not have it
+	 */
+	@SuppressWarnings( "unchecked" )
+	public synchronized < T > T getAttribute( final String key, final Class< T > type )
+	{
+		if ( !types.containsKey( key ) )
+			return null;
+
+		final Object value = values.get( key );
+		if ( type.isInstance( value ) )
+			return ( T ) value;
+
+		if ( value instanceof String )
+		{
+			try
+			{
+				final T converted = MetadataGson.GSON.fromJson( ( String ) value, type );
+				if ( converted != null )
+					return converted;
+			}
+			catch ( final Exception e ) { }
+		}
+
+		// read as the requested class, and remember it for the next parser
+		try
+		{
+			final T read = n5.getAttribute( path, key, type );
+			values.put( key, read );
+			return read;
+		}
+		catch ( final IOException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * The same map {@link N5MetadataParser#parseMetadataStatic(N5Reader,
+	 * String, Map)} builds, without reading from the backend again.
+	 *
+	 * @param keysToTypes the keys and classes a parser needs
+	 * @return the map
+	 */
+	public Map< String, Object > toMap( final Map< String, Class< ? > > keysToTypes )
+	{
+		final HashMap< String, Object > map = new HashMap<>();
+		map.put( "dataset", path );
+
+		for ( final Map.Entry< String, Class< ? > > e : keysToTypes.entrySet() )
+			map.put( e.getKey(), getAttribute( e.getKey(), e.getValue() ) );
+
+		if ( datasetAttributes != null )
+		{
+			map.put( "dimensions", datasetAttributes.getDimensions() );
+			map.put( "blockSize", datasetAttributes.getBlockSize() );
+			map.put( "dataType", datasetAttributes.getDataType().toString() );
+		}
+		return map;
+	}
+}
@@ -37,7 +37,6 @@ import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5TreeNode;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 
 public interface N5GsonMetadataParser < T extends N5Metadata > extends N5MetadataParser< T >
@@ -81,7 +80,6 @@ public interface N5GsonMetadataParser < T extends N5Metadata > extends N5Metadat
 
 	public default T parseMetadataGson( final String dataset, final HashMap< String, JsonElement > map ) throws Exception
 	{
-		final Gson gson = new GsonBuilder().create();
 		final HashMap< String, Object > objMap = new HashMap< String, Object >();
 		final HashMap< String, Class< ? > > typeMap = keysToTypes();
 		objMap.put( "dataset", dataset );
@@ -94,7 +92,7 @@ public interface N5GsonMetadataParser < T extends N5Metadata > extends N5Metadat
 
 		for( final String k : typeMap.keySet() )
 		{
-			objMap.put( k , gson.fromJson( map.get( k ), typeMap.get( k )));
+			objMap.put( k , MetadataGson.fromJson( map.get( k ), typeMap.get( k )));
 		}
 		return parseMetadata( objMap );
 	}
@@ -118,7 +116,7 @@ public interface N5GsonMetadataParser < T extends N5Metadata > extends N5Metadat
 	public static DatasetAttributes parseDatasetAttributesJson(
 			final HashMap< String, JsonElement > map )
 	{
-		final Gson gson = new GsonBuilder().create();
+		final Gson gson = MetadataGson.GSON;
 		try
 		{
 			final int[] blockSize = GsonAttributesParser.parseAttribute( map, "blockSize", int[].class, gson);
@@ -154,14 +152,13 @@ public interface N5GsonMetadataParser < T extends N5Metadata > extends N5Metadat
 			return new HashMap<>();
 		}
 
-		final Gson gson = new GsonBuilder().create();
 		final HashMap< String, Object > objMap = new HashMap< String, Object >();
 		final HashMap< String, Class< ? > > typeMap = keysToTypes();
 		objMap.put( "dataset", dataset );
 
 		for( final String k : typeMap.keySet() )
 		{
-			objMap.put( k , gson.fromJson( map.get( k ), typeMap.get( k )));
+			objMap.put( k , MetadataGson.fromJson( map.get( k ), typeMap.get( k )));
 		}
 
 		return objMap;
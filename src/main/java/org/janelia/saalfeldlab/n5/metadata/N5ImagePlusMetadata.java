@@ -284,22 +284,24 @@ public class N5ImagePlusMetadata extends AbstractN5Metadata implements Imageplus
 		if( !n5.datasetExists( dataset ))
 			throw new Exception( "Can't write into " + dataset + ".  Must be a dataset." );
 
-		n5.setAttribute( dataset, titleKey, t.name );
+		// one read-modify-write of the attributes instead of one per key
+		final HashMap< String, Object > attributes = new HashMap<>();
+		attributes.put( titleKey, t.name );
 
-		n5.setAttribute( dataset, fpsKey, t.fps );
-		n5.setAttribute( dataset, frameIntervalKey, t.frameInterval );
-		n5.setAttribute( dataset, pixelWidthKey, t.pixelWidth );
-		n5.setAttribute( dataset, pixelHeightKey, t.pixelHeight );
-		n5.setAttribute( dataset, pixelDepthKey, t.pixelDepth );
-		n5.setAttribute( dataset, pixelUnitKey, t.unit );
+		attributes.put( fpsKey, t.fps );
+		attributes.put( frameIntervalKey, t.frameInterval );
+		attributes.put( pixelWidthKey, t.pixelWidth );
+		attributes.put( pixelHeightKey, t.pixelHeight );
+		attributes.put( pixelDepthKey, t.pixelDepth );
+		attributes.put( pixelUnitKey, t.unit );
 
-		n5.setAttribute( dataset, xOriginKey, t.xOrigin );
-		n5.setAttribute( dataset, yOriginKey, t.yOrigin );
-		n5.setAttribute( dataset, zOriginKey, t.zOrigin );
+		attributes.put( xOriginKey, t.xOrigin );
+		attributes.put( yOriginKey, t.yOrigin );
+		attributes.put( zOriginKey, t.zOrigin );
 
-		n5.setAttribute( dataset, numChannelsKey, t.numChannels );
-		n5.setAttribute( dataset, numSlicesKey, t.numSlices );
-		n5.setAttribute( dataset, numFramesKey, t.numFrames );
+		attributes.put( numChannelsKey, t.numChannels );
+		attributes.put( numSlicesKey, t.numSlices );
+		attributes.put( numFramesKey, t.numFrames );
 
 		if ( t.properties != null )
 		{
@@ -307,12 +309,14 @@ public class N5ImagePlusMetadata extends AbstractN5Metadata implements Imageplus
 			{
 				try
 				{
-					n5.setAttribute( dataset, k.toString(), t.properties.get( k ).toString() );
+					attributes.put( k.toString(), t.properties.get( k ).toString() );
 				}
 				catch ( final Exception e )
 				{}
 			}
 		}
+
+		n5.setAttributes( dataset, attributes );
 	}
 
 }
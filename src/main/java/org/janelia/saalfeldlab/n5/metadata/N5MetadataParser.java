@@ -28,6 +28,7 @@ package org.janelia.saalfeldlab.n5.metadata;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
@@ -57,6 +58,19 @@ public interface N5MetadataParser < T extends N5Metadata > //R extends AbstractG
 		return true;
 	}
 
+	/**
+	 * Returns the keys a node must have for {@link #check(Map)} to pass.
+	 * Parsers that override {@link #check(Map)} to need fewer keys than
+	 * their {@link #keysToTypes()} should override this too.
+	 *
+	 * @return the required keys, or null if there are none
+	 */
+	public default Set< String > requiredKeys()
+	{
+		final HashMap< String, Class< ? > > keys = keysToTypes();
+		return keys == null ? null : keys.keySet();
+	}
+
 	public T parseMetadata( final Map< String, Object > map ) throws Exception;
 
 	/**
@@ -83,6 +97,21 @@ public interface N5MetadataParser < T extends N5Metadata > //R extends AbstractG
 		return parseMetadata( keys );
 	}
 
+	/**
+	 * Parses metadata from the attributes of a node that were read once for
+	 * all parsers.  Used for readers that are not Gson based.  Parsers that
+	 * need more than the attributes of their {@link #keysToTypes()} should
+	 * override this.
+	 *
+	 * @param attributes the attributes of the node
+	 * @return the metadata
+	 * @throws Exception parsing exception
+	 */
+	public default T parseMetadata( final N5AttributeSnapshot attributes ) throws Exception
+	{
+		return parseMetadata( attributes.toMap( keysToTypes() ) );
+	}
+
 	public static DatasetAttributes parseAttributes( final Map< String, Object > map  )
 	{
 		final int[] blockSize = ( int[] ) map.get( "blockSize" );
@@ -27,8 +27,10 @@ package org.janelia.saalfeldlab.n5.metadata;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.N5Writer;
@@ -100,6 +102,14 @@ N5MetadataWriter< N5SingleScaleMetadata >, ImageplusMetadata< N5SingleScaleMetad
 		return keysToTypes;
 	}
 
+	@Override
+	public Set< String > requiredKeys()
+	{
+		final Set< String > requiredKeys = new HashSet<>( AbstractN5Metadata.datasetAtttributeKeys().keySet() );
+		requiredKeys.add( PIXEL_RESOLUTION_KEY );
+		return requiredKeys;
+	}
+
 	@Override
 	public boolean check( final Map< String, Object > metaMap )
 	{
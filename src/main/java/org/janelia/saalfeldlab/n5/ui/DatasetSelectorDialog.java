@@ -32,15 +32,30 @@ import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -51,20 +66,29 @@ import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.JTree;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 
 import org.janelia.saalfeldlab.n5.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.N5DiscoveryCache;
+import org.janelia.saalfeldlab.n5.N5DiscoveryFilter;
+import org.janelia.saalfeldlab.n5.N5DiscoverySession;
+import org.janelia.saalfeldlab.n5.N5KeyLister;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5TreeNode;
 import org.janelia.saalfeldlab.n5.metadata.N5GroupParser;
@@ -137,16 +161,41 @@ public class DatasetSelectorDialog
 
 	private Predicate< N5TreeNode > n5NodeFilter;
 
+	private N5DiscoveryFilter discoveryFilter;
+
+	private boolean trustContainerIndex = false;
+
 	private N5DatasetTreeCellRenderer treeRenderer;
 
 	private final N5GroupParser<?>[] groupParsers;
 
 	private final N5MetadataParser<?>[] parsers;
 
-	private LinkedBlockingQueue< Future< N5TreeNode > > loaderFutures;
+	private Future< N5TreeNode > loaderFuture;
+
+	private N5DiscoverySession session;
 
 	private N5TreeNode rootNode;
 
+	private BiFunction< String, N5Reader, N5DiscoveryCache > discoveryCacheFun;
+
+	private Function< String, N5KeyLister > keyListerFun;
+
+	private Predicate< String > lazyLoading = x -> false;
+
+	private ForkJoinPool lazyLoaderPool;
+
+	private ConcurrentHashMap< N5TreeNode, Future< List< N5TreeNode > > > lazyChildren;
+
+	private Set< N5TreeNode > lazyAttached;
+
+	/**
+	 * The interval at which discovered nodes are inserted into the tree.
+	 */
+	public static final int TREE_UPDATE_INTERVAL_MS = 200;
+
+	private TreeUpdater treeUpdater;
+
 	public DatasetSelectorDialog(
 			final Function< String, N5Reader > n5Fun,
 			final Function< String, String > pathFun,
@@ -195,6 +244,14 @@ public class DatasetSelectorDialog
 
 	}
 
+	/**
+	 * Sets the executor that containers are discovered on, instead of a pool
+	 * per container sized for its backend.  Executors other than a
+	 * {@link ForkJoinPool} only set the number of threads, see
+	 * {@link N5DatasetDiscoverer}.
+	 *
+	 * @param loaderExecutor the executor, or null
+	 */
 	public void setLoaderExecutor( final ExecutorService loaderExecutor )
 	{
 		this.loaderExecutor = loaderExecutor;
@@ -215,6 +272,69 @@ public class DatasetSelectorDialog
 		this.n5NodeFilter = n5NodeFilter;
 	}
 
+	/**
+	 * Sets a filter that limits discovery to the groups and datasets it
+	 * accepts, see {@link N5DatasetDiscoverer#setDiscoveryFilter(N5DiscoveryFilter)}.
+	 *
+	 * @param discoveryFilter the filter, may be null
+	 */
+	public void setDiscoveryFilter( final N5DiscoveryFilter discoveryFilter )
+	{
+		this.discoveryFilter = discoveryFilter;
+	}
+
+	/**
+	 * See {@link N5DatasetDiscoverer#setTrustContainerIndex(boolean)}.
+	 *
+	 * @param trustContainerIndex whether to use container indexes that may be stale
+	 */
+	public void setTrustContainerIndex( final boolean trustContainerIndex )
+	{
+		this.trustContainerIndex = trustContainerIndex;
+	}
+
+	/**
+	 * Sets a function that creates a persistent discovery cache for a container
+	 * path and its reader, see {@link N5DiscoveryCache#forContainer(String, N5Reader)}.
+	 *
+	 * @param discoveryCacheFun the cache function
+	 */
+	public void setDiscoveryCacheFun( final BiFunction< String, N5Reader, N5DiscoveryCache > discoveryCacheFun )
+	{
+		this.discoveryCacheFun = discoveryCacheFun;
+	}
+
+	/**
+	 * Sets a function that gives a key lister for a container path, or null.
+	 * Containers with a key lister are discovered from one listing of their
+	 * metadata objects instead of one listing per group, see
+	 * {@link N5DatasetDiscoverer#discoverFromKeys(N5Reader, N5TreeNode, N5KeyLister)}.
+	 * This takes precedence over lazy loading.
+	 *
+	 * @param keyListerFun the key lister function
+	 */
+	public void setKeyListerFun( final Function< String, N5KeyLister > keyListerFun )
+	{
+		this.keyListerFun = keyListerFun;
+	}
+
+	/**
+	 * Sets which containers are loaded lazily: only the children of the root are
+	 * discovered at first, the children of a group when the user expands it, and
+	 * the next level is prefetched in the background.
+	 *
+	 * @param lazyLoading tests the container path
+	 */
+	public void setLazyLoading( final Predicate< String > lazyLoading )
+	{
+		this.lazyLoading = lazyLoading;
+	}
+
+	public void setLazyLoading( final boolean lazyLoading )
+	{
+		setLazyLoading( x -> lazyLoading );
+	}
+
 	public void setContainerPathUpdateCallback( final Consumer< String > containerPathUpdateCallback )
 	{
 		this.containerPathUpdateCallback = containerPathUpdateCallback;
@@ -289,6 +409,16 @@ public class DatasetSelectorDialog
 		dialog.setPreferredSize( new Dimension( frameSizeX, frameSizeY ) );
 		dialog.setMinimumSize( dialog.getPreferredSize() );
 
+		// closing the window stops discovery like the cancel button
+		dialog.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosing( final WindowEvent e )
+			{
+				cancel();
+			}
+		});
+
 		final Container pane = dialog.getContentPane();
 		pane.setLayout( new GridBagLayout() );
 
@@ -350,6 +480,20 @@ public class DatasetSelectorDialog
 		containerTree.setMinimumSize( new Dimension( 550, 230 ));
 		scaleFont( containerTree, (float)guiScale * 1.2f );
 
+		containerTree.addTreeWillExpandListener( new TreeWillExpandListener()
+		{
+			@Override
+			public void treeWillExpand( final TreeExpansionEvent event )
+			{
+				final Object node = event.getPath().getLastPathComponent();
+				if ( node instanceof N5TreeNode )
+					expandLazily( ( N5TreeNode ) node );
+			}
+
+			@Override
+			public void treeWillCollapse( final TreeExpansionEvent event ) {}
+		});
+
 		containerTree.getSelectionModel().setSelectionMode(
 				TreeSelectionModel.DISCONTIGUOUS_TREE_SELECTION );
 
@@ -357,6 +501,42 @@ public class DatasetSelectorDialog
 		containerTree.addTreeSelectionListener(
 				new N5IjTreeSelectionListener( containerTree.getSelectionModel() ));
 
+		// nodes that are not explored yet can be explored before the rest of the container
+		final JPopupMenu explorePopup = new JPopupMenu();
+		final JMenuItem exploreItem = new JMenuItem( "Explore now" );
+		explorePopup.add( exploreItem );
+		containerTree.addMouseListener( new MouseAdapter()
+		{
+			@Override
+			public void mousePressed( final MouseEvent e )
+			{
+				showPopup( e );
+			}
+
+			@Override
+			public void mouseReleased( final MouseEvent e )
+			{
+				showPopup( e );
+			}
+
+			private void showPopup( final MouseEvent e )
+			{
+				final TreePath path = containerTree.getPathForLocation( e.getX(), e.getY() );
+				if ( !e.isPopupTrigger() || path == null || !( path.getLastPathComponent() instanceof N5TreeNode ) )
+					return;
+
+				final N5TreeNode node = ( N5TreeNode ) path.getLastPathComponent();
+				if ( treeUpdater == null || node.isExplored() )
+					return;
+
+				for ( final ActionListener l : exploreItem.getActionListeners() )
+					exploreItem.removeActionListener( l );
+
+				exploreItem.addActionListener( x -> forceExplore( node ) );
+				explorePopup.show( containerTree, e.getX(), e.getY() );
+			}
+		});
+
         // By default leaf nodes (datasets) are displayed as files. This changes the default behavior to display them as folders
 //        final DefaultTreeCellRenderer treeCellRenderer = (DefaultTreeCellRenderer) containerTree.getCellRenderer();
 		if( treeRenderer != null )
@@ -483,29 +663,243 @@ public class DatasetSelectorDialog
 		messageLabel.setVisible( true );
 		dialog.repaint();
 
-		if( loaderExecutor == null )
-		{
-			loaderExecutor = Executors.newCachedThreadPool();
-		}
+		// stop discovering the previous container
+		closeSession();
+		session = new N5DiscoverySession();
 
+		// discovery runs on a bounded pool sized for the backend
+		// unless a pool was given with setLoaderExecutor
 		datasetDiscoverer = new N5DatasetDiscoverer( loaderExecutor, n5NodeFilter, groupParsers, parsers );
-		rootNode = new N5TreeNode( rootPath, false );
+		datasetDiscoverer.setDiscoveryFilter( discoveryFilter );
+		datasetDiscoverer.setTrustContainerIndex( trustContainerIndex );
+		datasetDiscoverer.setSession( session );
+		if( discoveryCacheFun != null )
+			datasetDiscoverer.setCache( discoveryCacheFun.apply( n5Path, n5 ) );
 
-		try
+		rootNode = new N5TreeNode( rootPath, false );
+		stopTreeUpdater();
+		final N5KeyLister keyLister = keyListerFun == null ? null : keyListerFun.apply( n5Path );
+		if( keyLister != null )
 		{
-			loaderFutures = datasetDiscoverer.discoverThreads( n5, rootNode );
+			shutdownLazyLoading();
+			treeModel.setAsksAllowsChildren( false );
+			loaderFuture = discoverFromKeys( keyLister );
+			new LoaderSorterAndCallback( rootNode, loaderFuture, null, 500 ).start();
 		}
-		catch ( IOException e )
+		else if( lazyLoading.test( n5Path ))
 		{
-			e.printStackTrace();
+			startLazyLoading();
 		}
+		else
+		{
+			shutdownLazyLoading();
+			treeModel.setAsksAllowsChildren( false );
 
-		// a thread that completes task after parsing is complete
-		new LoaderSorterAndCallback( rootNode, 500 ).start();
+			// nodes are shown as they are discovered
+			treeUpdater = new TreeUpdater( rootNode );
+			treeModel.setRoot( rootNode );
+			loaderFuture = datasetDiscoverer.discoverAsync( n5, rootNode, treeUpdater );
+			treeUpdater.start();
+
+			// a thread that completes task after parsing is complete
+			new LoaderSorterAndCallback( rootNode, loaderFuture, treeUpdater, 500 ).start();
+		}
 
 		containerTree.setEnabled( true );
     }
 
+	/*
+	 * Discovers the subtree below node on its own pool, so that it does not
+	 * wait for the discovery of the rest of the container, and shows it in
+	 * place of the partially discovered subtree.
+	 */
+	private void forceExplore( final N5TreeNode node )
+	{
+		final TreeUpdater updater = treeUpdater;
+		final N5Reader reader = n5;
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( null, n5NodeFilter, groupParsers, parsers );
+		discoverer.setDiscoveryFilter( discoveryFilter );
+		discoverer.setTrustContainerIndex( trustContainerIndex );
+		discoverer.setSession( session );
+		discoverer.setCache( datasetDiscoverer.getCache() );
+
+		final N5TreeNode subtree = new N5TreeNode( node.path, node.isDataset() );
+		final Future< N5TreeNode > future = discoverer.discoverAsync( reader, subtree );
+		new Thread( () -> {
+			try
+			{
+				future.get();
+			}
+			catch ( final CancellationException e )
+			{
+				return;
+			}
+			catch ( final ExecutionException e )
+			{
+				if ( !( e.getCause() instanceof CancellationException ) )
+					e.printStackTrace();
+
+				return;
+			}
+			catch ( final InterruptedException e )
+			{
+				return;
+			}
+
+			discoverer.parseGroupsRecursive( subtree );
+			discoverer.filterRecursive( subtree );
+			discoverer.sortAndTrimRecursive( subtree );
+			SwingUtilities.invokeLater( () -> updater.replace( node, subtree ) );
+		}).start();
+	}
+
+	/*
+	 * Discovers the tree from one listing of the container's metadata objects,
+	 * and falls back to crawling the container if the listing fails.  The
+	 * future completes with root, or with the crawled tree after a fallback.
+	 */
+	private Future< N5TreeNode > discoverFromKeys( final N5KeyLister keyLister )
+	{
+		final N5Reader reader = n5;
+		final N5TreeNode root = rootNode;
+		final N5DatasetDiscoverer discoverer = datasetDiscoverer;
+		final FutureTask< N5TreeNode > task = new FutureTask<>( () -> {
+			try
+			{
+				return discoverer.discoverFromKeys( reader, root, keyLister );
+			}
+			catch ( final IOException e )
+			{
+				// the listing may have attached nodes to root before it failed
+				final N5TreeNode crawled = new N5TreeNode( root.path, false );
+				discoverer.discoverAsync( reader, crawled ).get();
+				discoverer.parseGroupsRecursive( crawled );
+				discoverer.filterRecursive( crawled );
+				discoverer.sortAndTrimRecursive( crawled );
+				return crawled;
+			}
+		});
+		session.register( task );
+		new Thread( task ).start();
+		return task;
+	}
+
+	private void startLazyLoading()
+	{
+		shutdownLazyLoading();
+		lazyLoaderPool = session.register( new ForkJoinPool( datasetDiscoverer.getParallelism( n5 ) ) );
+		lazyChildren = new ConcurrentHashMap<>();
+		lazyAttached = Collections.newSetFromMap( new ConcurrentHashMap<>() );
+
+		final N5Reader reader = n5;
+		final N5TreeNode root = rootNode;
+		treeModel.setAsksAllowsChildren( true );
+		lazyLoaderPool.execute( () -> {
+			try
+			{
+				N5DatasetDiscoverer.parseMetadata( reader, root, parsers, null );
+			}
+			catch ( final IOException e )
+			{
+				e.printStackTrace();
+			}
+
+			SwingUtilities.invokeLater( () -> {
+				if ( root != rootNode )
+					return;
+
+				root.setAllowsChildren( !root.isDataset() );
+				treeModel.setRoot( root );
+				expandLazily( root );
+				messageLabel.setVisible( false );
+				dialog.repaint();
+			});
+		});
+	}
+
+	private Future< List< N5TreeNode > > lazyLoad( final N5TreeNode node )
+	{
+		final N5Reader reader = n5;
+		return lazyChildren.computeIfAbsent( node,
+				x -> lazyLoaderPool.submit( () -> datasetDiscoverer.discoverChildren( reader, x ) ) );
+	}
+
+	/*
+	 * Attaches the children of node once they are loaded, then prefetches the
+	 * children of its children.  Must be called on the event dispatch thread.
+	 */
+	private void expandLazily( final N5TreeNode node )
+	{
+		if ( lazyLoaderPool == null || node.isDataset() || lazyAttached.contains( node ) )
+			return;
+
+		final Future< List< N5TreeNode > > future = lazyLoad( node );
+		final N5TreeNode root = rootNode;
+		lazyLoaderPool.execute( () -> {
+			final List< N5TreeNode > children;
+			try
+			{
+				children = future.get();
+			}
+			catch ( final InterruptedException | ExecutionException e )
+			{
+				return;
+			}
+
+			SwingUtilities.invokeLater( () -> {
+				if ( root != rootNode || !lazyAttached.add( node ) )
+					return;
+
+				final int[] indices = new int[ children.size() ];
+				for ( int i = 0; i < indices.length; i++ )
+				{
+					final N5TreeNode child = children.get( i );
+					child.setAllowsChildren( !child.isDataset() );
+					node.add( child );
+					indices[ i ] = i;
+				}
+
+				datasetDiscoverer.parseGroupsRecursive( node );
+				datasetDiscoverer.filterRecursive( node );
+				treeModel.nodesWereInserted( node, indices );
+				treeModel.nodeChanged( node );
+				containerTree.expandPath( new TreePath( node.getPath() ) );
+
+				// prefetch the next level
+				for ( final N5TreeNode child : children )
+					if ( !child.isDataset() )
+						lazyLoad( child );
+			});
+		});
+	}
+
+	private void stopTreeUpdater()
+	{
+		if ( treeUpdater != null )
+			treeUpdater.stop();
+
+		treeUpdater = null;
+	}
+
+	/*
+	 * Cancels the discovery of the current container and releases its threads.
+	 */
+	private void closeSession()
+	{
+		if ( session != null )
+			session.close();
+
+		session = null;
+	}
+
+	private void shutdownLazyLoading()
+	{
+		if ( lazyLoaderPool != null )
+			lazyLoaderPool.shutdownNow();
+
+		lazyLoaderPool = null;
+	}
+
     private void ok()
     {
 		final ArrayList< N5Metadata > selectedMetadata = new ArrayList<>();
@@ -542,6 +936,9 @@ public class DatasetSelectorDialog
 		okCallback.accept( new DataSelection( n5, selectedMetadata ) );
         dialog.setVisible(false);
         dialog.dispose();
+        shutdownLazyLoading();
+        stopTreeUpdater();
+        closeSession();
     }
 
     private void cancel()
@@ -556,6 +953,10 @@ public class DatasetSelectorDialog
 		{
 			parserFuture.cancel( true );
 		}
+
+		shutdownLazyLoading();
+		stopTreeUpdater();
+		closeSession();
     }
 
 	private static final Font DEFAULT_FONT = new Font( Font.SANS_SERIF, Font.PLAIN, 12 );
@@ -595,14 +996,208 @@ public class DatasetSelectorDialog
 		return scaleSize( scaleFont( c ) );
 	}
 
+	/*
+	 * Inserts nodes into the tree as discovery finds them.  Discovery threads
+	 * queue the updates, and a timer applies them on the event dispatch thread
+	 * at a fixed rate, with one nodesWereInserted per parent and batch.  Subtrees
+	 * are sorted as nodes are inserted, and are trimmed, group parsed and
+	 * filtered when they complete.
+	 */
+	private class TreeUpdater implements N5DatasetDiscoverer.DiscoveryListener
+	{
+		private final N5TreeNode root;
+
+		private final ConcurrentLinkedQueue< Runnable > updates = new ConcurrentLinkedQueue<>();
+
+		// inserted nodes that the model was not yet told about, by parent
+		private final Map< N5TreeNode, List< N5TreeNode > > inserted = new LinkedHashMap<>();
+
+		private final Set< N5TreeNode > pending = new HashSet<>();
+
+		private final Set< N5TreeNode > expanded = new HashSet<>();
+
+		// nodes whose subtrees were explored by forceExplore
+		private final Set< N5TreeNode > replaced = new HashSet<>();
+
+		private final Timer timer;
+
+		public TreeUpdater( final N5TreeNode root )
+		{
+			this.root = root;
+			timer = new Timer( TREE_UPDATE_INTERVAL_MS, e -> update() );
+		}
+
+		public void start()
+		{
+			timer.start();
+		}
+
+		public void stop()
+		{
+			timer.stop();
+			updates.clear();
+		}
+
+		@Override
+		public void discovered( final N5TreeNode parent, final N5TreeNode node )
+		{
+			if ( parent == null )
+				updates.add( () -> treeModel.nodeChanged( node ) );
+			else
+				updates.add( () -> insert( parent, node ) );
+		}
+
+		@Override
+		public void completed( final N5TreeNode node )
+		{
+			updates.add( () -> finish( node ) );
+		}
+
+		/*
+		 * Applies the queued updates.  Must be called on the event dispatch thread.
+		 */
+		public void update()
+		{
+			if ( treeModel.getRoot() != root )
+				return;
+
+			Runnable update;
+			while ( ( update = updates.poll() ) != null )
+				update.run();
+
+			fireInserted();
+		}
+
+		/*
+		 * Shows the explored subtree in place of the children of node.  Must
+		 * be called on the event dispatch thread.
+		 */
+		public void replace( final N5TreeNode node, final N5TreeNode subtree )
+		{
+			update();
+			if ( treeModel.getRoot() != root || node.isExplored() || isStale( node ) )
+				return;
+
+			replaced.add( node );
+			node.removeAllChildren();
+			for ( final N5TreeNode child : subtree.childrenList() )
+				node.add( child );
+
+			if ( node.getMetadata() == null )
+				node.setMetadata( subtree.getMetadata() );
+
+			node.setExplored( true );
+			if ( node != root && node.isLeaf() && node.getMetadata() == null )
+			{
+				treeModel.removeNodeFromParent( node );
+				return;
+			}
+
+			treeModel.nodeStructureChanged( node );
+			containerTree.expandPath( new TreePath( node.getPath() ) );
+		}
+
+		/*
+		 * Whether node was removed from the tree or is below a replaced node,
+		 * so updates from the discovery of the container do not apply.
+		 */
+		private boolean isStale( final N5TreeNode node )
+		{
+			N5TreeNode n = node;
+			while ( n.getParent() != null )
+			{
+				n = ( N5TreeNode ) n.getParent();
+				if ( replaced.contains( n ) )
+					return true;
+			}
+			return n != root;
+		}
+
+		private void insert( final N5TreeNode parent, final N5TreeNode node )
+		{
+			if ( replaced.contains( parent ) || isStale( parent ) )
+				return;
+
+			datasetDiscoverer.addSorted( parent, node );
+			inserted.computeIfAbsent( parent, x -> new ArrayList<>() ).add( node );
+			pending.add( node );
+		}
+
+		private void finish( final N5TreeNode node )
+		{
+			if ( replaced.contains( node ) || isStale( node ) )
+				return;
+
+			final boolean keep = datasetDiscoverer.finishNode( node );
+			final N5TreeNode parent = ( N5TreeNode ) node.getParent();
+			if ( parent == null )
+			{
+				treeModel.nodeChanged( node );
+				return;
+			}
+
+			if ( pending.contains( node ) )
+			{
+				// the model does not know the node yet
+				if ( !keep )
+				{
+					pending.remove( node );
+					inserted.get( parent ).remove( node );
+					parent.remove( node );
+				}
+				return;
+			}
+
+			if ( keep )
+				treeModel.nodeChanged( node );
+			else
+			{
+				// indices of removed nodes must not count pending insertions
+				if ( inserted.containsKey( parent ) )
+					fireInserted();
+
+				treeModel.removeNodeFromParent( node );
+			}
+		}
+
+		private void fireInserted()
+		{
+			for ( final Map.Entry< N5TreeNode, List< N5TreeNode > > e : inserted.entrySet() )
+			{
+				final N5TreeNode parent = e.getKey();
+				final List< N5TreeNode > children = e.getValue();
+				if ( children.isEmpty() )
+					continue;
+
+				final int[] indices = new int[ children.size() ];
+				for ( int i = 0; i < indices.length; i++ )
+					indices[ i ] = parent.getIndex( children.get( i ) );
+
+				Arrays.sort( indices );
+				treeModel.nodesWereInserted( parent, indices );
+
+				// expand the first layer of the tree
+				if ( ( parent == root || parent.getParent() == root ) && expanded.add( parent ) )
+					containerTree.expandPath( new TreePath( parent.getPath() ) );
+			}
+			inserted.clear();
+			pending.clear();
+		}
+	}
+
 	private class LoaderSorterAndCallback extends Thread
 	{
 		final long waitIntervalMs;
-		private N5TreeNode root;
-		public LoaderSorterAndCallback( final N5TreeNode root, final long waitInterval )
+		private final N5TreeNode root;
+		private final Future< N5TreeNode > future;
+		private final TreeUpdater updater;
+		public LoaderSorterAndCallback( final N5TreeNode root, final Future< N5TreeNode > future,
+				final TreeUpdater updater, final long waitInterval )
 		{
 			this.waitIntervalMs = waitInterval;
 			this.root = root;
+			this.future = future;
+			this.updater = updater;
 		}
 
 		@Override
@@ -610,40 +1205,54 @@ public class DatasetSelectorDialog
 		{
 			try
 			{
-				while( loaderFutures.size() > 0 )
+				N5TreeNode tree = root;
+				try
 				{
-					try
-					{
-						loaderFutures.poll().get();
-					}
-					catch ( ExecutionException e )
-					{
-						e.printStackTrace();
-					}
+					tree = future.get();
+					if( datasetDiscoverer.getCache() != null )
+						datasetDiscoverer.getCache().save();
+				}
+				catch ( final CancellationException e )
+				{
+					// another container was opened or the dialog closed
+					return;
 				}
+				catch ( final ExecutionException e )
+				{
+					if ( e.getCause() instanceof CancellationException )
+						return;
 
-				datasetDiscoverer.sortAndTrimRecursive( rootNode );
-				datasetDiscoverer.parseGroupsRecursive( rootNode );
-				datasetDiscoverer.filterRecursive( rootNode );
+					e.printStackTrace();
+				}
+				catch ( final IOException e )
+				{
+					e.printStackTrace();
+				}
 
+				final N5TreeNode discovered = tree;
 				SwingUtilities.invokeLater( new Runnable()
 				{
 					@Override
 					public void run()
 					{
-						// expand first layer of the tree
-						// in the EDGT
-						@SuppressWarnings( "rawtypes" )
-						Enumeration e = rootNode.children(); 
-						while( e.hasMoreElements() )
+						// apply the last updates in the EDT
+						if ( updater != null )
 						{
-							N5TreeNode child = ( N5TreeNode ) e.nextElement();
-							containerTree.expandPath( new TreePath( 
-									new N5TreeNode[]{ rootNode, child }));
+							updater.update();
+							updater.stop();
+						}
+
+						if ( rootNode != root )
+							return;
+
+						if ( updater == null )
+						{
+							// set the root node for the JTree and expand its first layer
+							treeModel.setRoot( discovered );
+							for ( final N5TreeNode child : discovered.childrenList() )
+								containerTree.expandPath( new TreePath( new N5TreeNode[]{ discovered, child } ) );
 						}
 
-						// set the root node for the JTree
-						treeModel.setRoot( rootNode );
 						messageLabel.setText( "Done" );
 						dialog.repaint();
 					}
@@ -656,12 +1265,13 @@ public class DatasetSelectorDialog
 					@Override
 					public void run()
 					{
+						if ( rootNode != root )
+							return;
+
 						messageLabel.setVisible( false );
 						dialog.repaint();
 					}
 				});
-
-				this.join();
 			}
 			catch( InterruptedException e )
 			{
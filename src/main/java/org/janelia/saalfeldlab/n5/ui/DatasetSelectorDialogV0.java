@@ -53,7 +53,6 @@ import javax.swing.JTextField;
 import javax.swing.JTree;
 import javax.swing.SpinnerListModel;
 import javax.swing.SpinnerNumberModel;
-import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeSelectionModel;
@@ -320,8 +319,7 @@ public class DatasetSelectorDialogV0
         dialog.setVisible(true);
 
         containerTree.addTreeSelectionListener(e -> {
-            final DefaultMutableTreeNode node = (DefaultMutableTreeNode) containerTree.getLastSelectedPathComponent();
-            selectedNode = (node == null ? null : (N5TreeNode) node.getUserObject());
+            selectedNode = (N5TreeNode) containerTree.getLastSelectedPathComponent();
             addSourceBtn.setEnabled( selectedNode != null && selectedNode.getMetadata() != null );
         });
 
@@ -24,6 +24,10 @@ public class N5DatasetTreeCellRenderer extends DefaultTreeCellRenderer
 
 	private static final String nameFormat = "<b>%s</b>";
 
+	private static final String unexploredFormat = "<html>%s <font color=\"gray\"><i>(not yet explored)</i></font></html>";
+
+	private static final String truncatedFormat = "<html>%s <font color=\"gray\"><i>(some children not shown)</i></font></html>";
+
 	private static final String dimDelimeter = thinSpace + times + thinSpace;
 
 	private final boolean showConversionWarning;
@@ -62,6 +66,10 @@ public class N5DatasetTreeCellRenderer extends DefaultTreeCellRenderer
 						")</html>"
 				}));
 			}
+			else if ( !node.isExplored() )
+				setText( String.format( unexploredFormat, node.getNodeName() ) );
+			else if ( node.isTruncated() )
+				setText( String.format( truncatedFormat, node.getNodeName() ) );
 		}
 		return this;
     }
@@ -0,0 +1,60 @@
+package org.janelia.saalfeldlab.n5;
+
+import org.janelia.saalfeldlab.n5.dataaccess.DataAccessType;
+import org.janelia.saalfeldlab.n5.ij.AutoBlockSize;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AutoBlockSizeTests
+{
+	@Test
+	public void testIsotropic()
+	{
+		final int[] blockSize = AutoBlockSize.blockSize(
+				new long[]{ 1000, 1000, 1000 }, DataType.UINT8, null, 1 << 20, 2 );
+		Assert.assertArrayEquals( "isotropic", new int[]{ 128, 128, 128 }, blockSize );
+	}
+
+	@Test
+	public void testAnisotropic()
+	{
+		final int[] blockSize = AutoBlockSize.blockSize(
+				new long[]{ 1000, 1000, 200 }, DataType.UINT8, new double[]{ 1, 1, 4 }, 1 << 20, 2 );
+		Assert.assertEquals( "anisotropic size", 1 << 21, numElements( blockSize ) );
+		Assert.assertTrue( "anisotropic z thinner", blockSize[ 2 ] < blockSize[ 0 ] );
+		Assert.assertEquals( "anisotropic x y", blockSize[ 0 ], blockSize[ 1 ] );
+	}
+
+	@Test
+	public void testNonSpatialAndSmallDimensions()
+	{
+		// x, y, c, z with a thin z
+		final int[] blockSize = AutoBlockSize.blockSize(
+				new long[]{ 4096, 4096, 3, 5 }, DataType.UINT16,
+				new double[]{ 1, 1, Double.NaN, 1 }, 1 << 20, 1 );
+		Assert.assertEquals( "channel", 1, blockSize[ 2 ] );
+		Assert.assertEquals( "whole z", 5, blockSize[ 3 ] );
+		Assert.assertTrue( "within target", numElements( blockSize ) * 2 <= 1 << 20 );
+		Assert.assertTrue( "close to target", numElements( blockSize ) * 2 > 1 << 19 );
+	}
+
+	@Test
+	public void testBackendDefaults()
+	{
+		final long[] dimensions = new long[]{ 10000, 10000 };
+		final int[] fs = AutoBlockSize.blockSize( dimensions, DataType.FLOAT32, null, DataAccessType.FILESYSTEM );
+		final int[] s3 = AutoBlockSize.blockSize( dimensions, DataType.FLOAT32, null, DataAccessType.AMAZON_S3 );
+		Assert.assertTrue( "cloud blocks larger", numElements( s3 ) > numElements( fs ) );
+
+		final int[] small = AutoBlockSize.blockSize( new long[]{ 10, 20 }, DataType.FLOAT32, null, DataAccessType.AMAZON_S3 );
+		Assert.assertArrayEquals( "small image", new int[]{ 10, 20 }, small );
+	}
+
+	private static long numElements( final int[] blockSize )
+	{
+		long n = 1;
+		for ( final int s : blockSize )
+			n *= s;
+		return n;
+	}
+}
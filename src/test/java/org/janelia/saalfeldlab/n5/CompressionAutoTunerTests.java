@@ -0,0 +1,166 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.janelia.saalfeldlab.n5.ij.CompressionAutoTuner;
+import org.janelia.saalfeldlab.n5.ij.CompressionAutoTuner.Goal;
+import org.janelia.saalfeldlab.n5.ij.CompressionAutoTuner.Trial;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.ByteArray;
+import net.imglib2.img.basictypes.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class CompressionAutoTunerTests
+{
+	private static final int[] blockSize = new int[]{ 16, 16, 4 };
+
+	@Test
+	public void testChoosesSmallest()
+	{
+		final LinkedHashMap< String, Compression > candidates = new LinkedHashMap<>();
+		candidates.put( "raw", new RawCompression() );
+		candidates.put( "gzip level 6", new GzipCompression( 6 ) );
+		final CompressionAutoTuner tuner = new CompressionAutoTuner( candidates );
+
+		// a smooth ramp compresses well
+		final List< String > log = new ArrayList<>();
+		Assert.assertSame( "ramp", candidates.get( "gzip level 6" ), tuner.tune( ramp(), blockSize, Goal.SIZE, log::add ) );
+		Assert.assertEquals( "one line per candidate and the choice", 3, log.size() );
+		Assert.assertEquals( "selected", "Selected compression: gzip level 6", log.get( 2 ) );
+
+		// uniform noise does not compress at all
+		Assert.assertSame( "noise", candidates.get( "raw" ), tuner.tune( noise(), blockSize, Goal.SIZE, null ) );
+	}
+
+	@Test
+	public void testDeterministic()
+	{
+		final LinkedHashMap< String, Compression > candidates = new LinkedHashMap<>();
+		candidates.put( "raw", new RawCompression() );
+		candidates.put( "lz4", new Lz4Compression() );
+		candidates.put( "gzip level 1", new GzipCompression( 1 ) );
+		candidates.put( "gzip level 9", new GzipCompression( 9 ) );
+		candidates.put( "xz preset 6", new XzCompression( 6 ) );
+		final CompressionAutoTuner tuner = new CompressionAutoTuner( candidates );
+
+		final ArrayImg< UnsignedShortType, ShortArray > img = ramp();
+		final List< Trial > first = tuner.benchmark( img, blockSize );
+		Assert.assertEquals( "all candidates measured", candidates.size(), first.size() );
+		final Trial best = tuner.best( first, Goal.SIZE );
+		Assert.assertNotEquals( "compressed", "raw", best.name );
+
+		for ( int i = 0; i < 3; i++ )
+		{
+			final List< Trial > trials = tuner.benchmark( img, blockSize );
+			Assert.assertEquals( "candidates " + i, first.size(), trials.size() );
+			for ( int j = 0; j < first.size(); j++ )
+			{
+				Assert.assertEquals( "name " + i, first.get( j ).name, trials.get( j ).name );
+				Assert.assertEquals( "raw bytes " + first.get( j ).name, first.get( j ).rawBytes, trials.get( j ).rawBytes );
+				Assert.assertEquals( "compressed bytes " + first.get( j ).name, first.get( j ).compressedBytes, trials.get( j ).compressedBytes );
+			}
+			Assert.assertSame( "choice " + i, best.compression, tuner.tune( img, blockSize, Goal.SIZE, null ) );
+		}
+	}
+
+	@Test
+	public void testSampleBlocks()
+	{
+		final LinkedHashMap< String, Compression > candidates = new LinkedHashMap<>();
+		candidates.put( "raw", new RawCompression() );
+		final CompressionAutoTuner tuner = new CompressionAutoTuner( candidates );
+		final long bytesPerBlock = 16 * 16 * 4 * 2;
+
+		// 2 x 2 x 2 blocks, all sampled
+		Assert.assertEquals( "all blocks", 8 * bytesPerBlock, tuner.benchmark( ramp(), blockSize ).get( 0 ).rawBytes );
+
+		tuner.setMaxSampleBlocks( 3 );
+		Assert.assertEquals( "limited", 3 * bytesPerBlock, tuner.benchmark( ramp(), blockSize ).get( 0 ).rawBytes );
+	}
+
+	@Test
+	public void testBestByGoal()
+	{
+		final Compression fastCompression = new Lz4Compression();
+		final Compression smallCompression = new XzCompression( 6 );
+
+		// 1 MB of data, 600 kB in 10 ms or 200 kB in 100 ms, and a candidate
+		// that ran out of time after 100 kB, smaller and faster in total but
+		// not per byte
+		final List< Trial > trials = Arrays.asList(
+				new Trial( "fast", fastCompression, 1000000, 600000, 10000000, 5000000 ),
+				new Trial( "small", smallCompression, 1000000, 200000, 100000000, 20000000 ),
+				new Trial( "cut off", new GzipCompression(), 100000, 50000, 2000000, 1000000 ) );
+
+		final CompressionAutoTuner tuner = new CompressionAutoTuner( new LinkedHashMap<>() );
+		Assert.assertSame( "size", smallCompression, tuner.best( trials, Goal.SIZE ).compression );
+		Assert.assertSame( "write", fastCompression, tuner.best( trials, Goal.WRITE_SPEED ).compression );
+		Assert.assertSame( "read", fastCompression, tuner.best( trials, Goal.READ_SPEED ).compression );
+
+		// at 1 MB/s moving the extra 400 kB takes longer than compressing them
+		tuner.setStorageThroughput( 1 );
+		Assert.assertSame( "slow storage write", smallCompression, tuner.best( trials, Goal.WRITE_SPEED ).compression );
+		Assert.assertSame( "slow storage read", smallCompression, tuner.best( trials, Goal.READ_SPEED ).compression );
+
+		Assert.assertNull( "no trials", tuner.best( new ArrayList<>(), Goal.SIZE ) );
+		Assert.assertTrue( "no candidates", tuner.tune( ramp(), blockSize, Goal.SIZE, null ) instanceof RawCompression );
+	}
+
+	@Test
+	public void testFailingCandidate()
+	{
+		final LinkedHashMap< String, Compression > candidates = new LinkedHashMap<>();
+		candidates.put( "broken", new Compression()
+		{
+			@Override
+			public BlockReader getReader()
+			{
+				throw new UnsupportedOperationException( "no reader" );
+			}
+
+			@Override
+			public BlockWriter getWriter()
+			{
+				throw new UnsupportedOperationException( "no writer" );
+			}
+		} );
+		candidates.put( "raw", new RawCompression() );
+		final CompressionAutoTuner tuner = new CompressionAutoTuner( candidates );
+
+		final List< String > log = new ArrayList<>();
+		Assert.assertSame( "skipped", candidates.get( "raw" ), tuner.tune( ramp(), blockSize, Goal.SIZE, log::add ) );
+		Assert.assertTrue( "reported", log.get( 0 ).startsWith( "Could not benchmark broken" ) );
+		Assert.assertEquals( "measured", 1, tuner.benchmark( ramp(), blockSize ).size() );
+	}
+
+	private static ArrayImg< UnsignedShortType, ShortArray > ramp()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( 32, 32, 8 );
+		final Cursor< UnsignedShortType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( c.getIntPosition( 0 ) + c.getIntPosition( 1 ) + 10 * c.getIntPosition( 2 ) );
+		}
+		return img;
+	}
+
+	private static ArrayImg< UnsignedByteType, ByteArray > noise()
+	{
+		final Random rnd = new Random( 42 );
+		final ArrayImg< UnsignedByteType, ByteArray > img = ArrayImgs.unsignedBytes( 32, 32, 8 );
+		for ( final UnsignedByteType t : img )
+			t.set( rnd.nextInt( 256 ) );
+		return img;
+	}
+}
@@ -0,0 +1,57 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.util.Arrays;
+
+import org.janelia.saalfeldlab.n5.ij.ImagePlusBlocks;
+import org.janelia.saalfeldlab.n5.ij.N5BlockUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.imageplus.ImagePlusImgs;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+
+public class ImagePlusBlocksTests
+{
+	@Test
+	public void testBlocksMatchGenericPath()
+	{
+		final int[][] blockSizes = new int[][]{
+			{ 32, 24, 1, 1 },	// whole slices
+			{ 32, 8, 2, 3 },	// whole rows
+			{ 7, 5, 2, 2 },		// partial rows and border blocks
+		};
+
+		for ( final int bitDepth : new int[]{ 8, 16, 24, 32 } )
+		{
+			final ImagePlus imp = NewImage.createImage( "test", 32, 24, 2 * 5, bitDepth, NewImage.FILL_NOISE );
+			imp.setDimensions( 2, 5, 1 );
+			Assert.assertTrue( "supported " + bitDepth, ImagePlusBlocks.supports( imp ) );
+
+			final ImagePlusBlocks blocks = new ImagePlusBlocks( imp );
+			@SuppressWarnings( { "unchecked", "rawtypes" } )
+			final RandomAccessibleInterval img = ImagePlusImgs.from( imp );
+			Assert.assertArrayEquals( "dimensions " + bitDepth, Intervals.dimensionsAsLongArray( img ), blocks.getDimensions() );
+
+			for ( final int[] blockSize : blockSizes )
+			{
+				final long[] gridDimensions = N5BlockUtils.gridDimensions( blocks.getDimensions(), blockSize );
+				for ( long i = 0; i < Intervals.numElements( gridDimensions ); i++ )
+				{
+					final long[] gridPosition = N5BlockUtils.gridPosition( i, gridDimensions );
+					@SuppressWarnings( "unchecked" )
+					final DataBlock< ? > expected = N5BlockUtils.createDataBlock(
+							img, N5BlockUtils.dataType( Util.getTypeFromInterval( img ) ), blockSize, gridPosition );
+					final DataBlock< ? > block = blocks.createDataBlock( blockSize, gridPosition );
+
+					final String msg = bitDepth + " " + Arrays.toString( blockSize ) + " " + Arrays.toString( gridPosition );
+					Assert.assertArrayEquals( "size " + msg, expected.getSize(), block.getSize() );
+					Assert.assertArrayEquals( "data " + msg, expected.toByteBuffer().array(), block.toByteBuffer().array() );
+				}
+			}
+		}
+	}
+}
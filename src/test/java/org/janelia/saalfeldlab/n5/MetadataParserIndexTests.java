@@ -0,0 +1,56 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.metadata.DefaultMetadata;
+import org.janelia.saalfeldlab.n5.metadata.MetadataParserIndex;
+import org.janelia.saalfeldlab.n5.metadata.N5MetadataParser;
+import org.janelia.saalfeldlab.n5.metadata.N5SingleScaleMetadata;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetadataParserIndexTests
+{
+	@Test
+	public void testCandidates()
+	{
+		final MetadataParserIndex index = new MetadataParserIndex( N5Importer.PARSERS );
+
+		Assert.assertTrue( "group", index.candidates( Collections.< String >emptySet() ).isEmpty() );
+
+		final List< N5MetadataParser< ? > > dataset = index.candidates( new HashSet<>( Arrays.asList(
+				"dimensions", "blockSize", "dataType", "compression" ) ) );
+		Assert.assertEquals( "dataset", 1, dataset.size() );
+		Assert.assertTrue( "default metadata", dataset.get( 0 ) instanceof DefaultMetadata );
+
+		final List< N5MetadataParser< ? > > n5v = index.candidates( new HashSet<>( Arrays.asList(
+				"dimensions", "blockSize", "dataType", "compression",
+				N5SingleScaleMetadata.DOWNSAMPLING_FACTORS_KEY,
+				N5SingleScaleMetadata.PIXEL_RESOLUTION_KEY,
+				N5SingleScaleMetadata.AFFINE_TRANSFORM_KEY ) ) );
+		Assert.assertEquals( "n5 viewer dataset", 2, n5v.size() );
+		Assert.assertTrue( "n5 viewer first", n5v.get( 0 ) instanceof N5SingleScaleMetadata );
+
+		// pixelResolution is the only key n5 viewer datasets need
+		final List< N5MetadataParser< ? > > resolutionOnly = index.candidates( new HashSet<>( Arrays.asList(
+				"dimensions", "blockSize", "dataType", "compression",
+				N5SingleScaleMetadata.PIXEL_RESOLUTION_KEY ) ) );
+		Assert.assertEquals( "n5 viewer dataset with resolution only", 2, resolutionOnly.size() );
+		Assert.assertTrue( "n5 viewer first with resolution only", resolutionOnly.get( 0 ) instanceof N5SingleScaleMetadata );
+	}
+
+	@Test
+	public void testRequiredKeys()
+	{
+		final N5SingleScaleMetadata parser = new N5SingleScaleMetadata();
+		Assert.assertTrue( "resolution", parser.requiredKeys().contains( N5SingleScaleMetadata.PIXEL_RESOLUTION_KEY ) );
+		Assert.assertFalse( "downsampling factors", parser.requiredKeys().contains( N5SingleScaleMetadata.DOWNSAMPLING_FACTORS_KEY ) );
+		Assert.assertFalse( "transform", parser.requiredKeys().contains( N5SingleScaleMetadata.AFFINE_TRANSFORM_KEY ) );
+		Assert.assertTrue( "dataset keys", parser.requiredKeys().containsAll( MetadataParserIndex.DATASET_KEYS ) );
+		Assert.assertEquals( "default", new DefaultMetadata( "", 1 ).keysToTypes().keySet(), new DefaultMetadata( "", 1 ).requiredKeys() );
+	}
+}
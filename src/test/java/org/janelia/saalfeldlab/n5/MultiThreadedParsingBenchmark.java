@@ -2,10 +2,7 @@ package org.janelia.saalfeldlab.n5;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.janelia.saalfeldlab.n5.N5DatasetDiscoverer;
 import org.janelia.saalfeldlab.n5.N5Reader;
@@ -20,10 +17,9 @@ public class MultiThreadedParsingBenchmark
 
 	public static void main( String[] args ) throws IOException, DataAccessException
 	{
-//		ExecutorService executor = Executors.newSingleThreadExecutor();
-//		ExecutorService executor = Executors.newFixedThreadPool( 16 );
-		ExecutorService executor = Executors.newCachedThreadPool();
-		N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( executor, null, N5Importer.PARSERS );
+		N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( null, null, N5Importer.PARSERS );
+		if( args.length > 2 )
+			discoverer.setParallelism( Integer.parseInt( args[ 2 ] ));
 
         final String n5RootPath = args[ 0 ];
         final String n5Dataset = args[ 1 ];
@@ -32,17 +28,11 @@ public class MultiThreadedParsingBenchmark
 		N5TreeNode root = new N5TreeNode( n5Dataset, false );
 
 		long start = System.currentTimeMillis();
-		System.out.println( "discover" );
-		LinkedBlockingQueue< Future< N5TreeNode > > parseFutures = discoverer.discoverThreads( n5, root );
+		System.out.println( "discover with parallelism " + discoverer.getParallelism( n5 ) );
+		Future< N5TreeNode > parseFuture = discoverer.discoverAsync( n5, root );
 		try
 		{
-			System.out.println( executor.isShutdown() );
-			System.out.println( executor.isTerminated() );
-			while( !parseFutures.isEmpty())
-			{
-				parseFutures.poll().get();
-				//System.out.println("job done, still have " + parseFutures.size() );
-			}
+			parseFuture.get();
 			System.out.println( "All jobs done" );
 		}
 		catch ( InterruptedException e )
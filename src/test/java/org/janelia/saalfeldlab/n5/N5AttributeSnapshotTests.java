@@ -0,0 +1,54 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.janelia.saalfeldlab.n5.metadata.DefaultMetadata;
+import org.janelia.saalfeldlab.n5.metadata.N5AttributeSnapshot;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class N5AttributeSnapshotTests
+{
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-snapshot-test" ).toFile();
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+		n5.createDataset( "d", new DatasetAttributes( new long[]{ 8, 6 }, new int[]{ 4, 4 }, DataType.UINT16, new RawCompression() ) );
+		n5.setAttribute( "d", "title", "a title" );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testSnapshot() throws Exception
+	{
+		final N5AttributeSnapshot snapshot = N5AttributeSnapshot.read( n5, "d" );
+		Assert.assertTrue( "title key", snapshot.getKeys().contains( "title" ) );
+		Assert.assertTrue( "dataset keys", snapshot.getKeys().contains( "dimensions" ) );
+		Assert.assertEquals( "title", "a title", snapshot.getAttribute( "title", String.class ) );
+		Assert.assertNull( "missing", snapshot.getAttribute( "missing", String.class ) );
+
+		final DefaultMetadata parser = new DefaultMetadata( "", -1 );
+		final Map< String, Object > map = snapshot.toMap( parser.keysToTypes() );
+		Assert.assertArrayEquals( "dimensions", new long[]{ 8, 6 }, ( long[] ) map.get( "dimensions" ) );
+
+		final DefaultMetadata meta = parser.parseMetadata( snapshot );
+		Assert.assertNotNull( "parsed", meta );
+		Assert.assertEquals( "data type", DataType.UINT16, meta.getAttributes().getDataType() );
+	}
+}
@@ -0,0 +1,90 @@
+package org.janelia.saalfeldlab.n5;
+
+import org.janelia.saalfeldlab.n5.ij.N5BlockUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class N5BlockUtilsTests
+{
+	@Test
+	public void testGrid()
+	{
+		Assert.assertArrayEquals( "grid", new long[]{ 3, 3, 1 }, N5BlockUtils.gridDimensions( new long[]{ 10, 9, 4 }, new int[]{ 4, 3, 4 } ) );
+
+		// x varies fastest
+		final long[] gridDimensions = new long[]{ 3, 2 };
+		Assert.assertArrayEquals( "first", new long[]{ 0, 0 }, N5BlockUtils.gridPosition( 0, gridDimensions ) );
+		Assert.assertArrayEquals( "second", new long[]{ 1, 0 }, N5BlockUtils.gridPosition( 1, gridDimensions ) );
+		Assert.assertArrayEquals( "next row", new long[]{ 0, 1 }, N5BlockUtils.gridPosition( 3, gridDimensions ) );
+		Assert.assertArrayEquals( "last", new long[]{ 2, 1 }, N5BlockUtils.gridPosition( 5, gridDimensions ) );
+	}
+
+	@Test
+	public void testDataType()
+	{
+		Assert.assertEquals( "uint16", DataType.UINT16, N5BlockUtils.dataType( new UnsignedShortType() ) );
+		Assert.assertEquals( "float32", DataType.FLOAT32, N5BlockUtils.dataType( new FloatType() ) );
+		Assert.assertEquals( "argb", DataType.UINT32, N5BlockUtils.dataType( new ARGBType() ) );
+		Assert.assertEquals( "bytes uint8", 1, N5BlockUtils.bytesPerElement( DataType.UINT8 ) );
+		Assert.assertEquals( "bytes int16", 2, N5BlockUtils.bytesPerElement( DataType.INT16 ) );
+		Assert.assertEquals( "bytes float32", 4, N5BlockUtils.bytesPerElement( DataType.FLOAT32 ) );
+		Assert.assertEquals( "bytes float64", 8, N5BlockUtils.bytesPerElement( DataType.FLOAT64 ) );
+	}
+
+	@Test
+	public void testCreateDataBlock()
+	{
+		final ArrayImg< UnsignedShortType, ? > img = ArrayImgs.unsignedShorts( 10, 7 );
+		final Cursor< UnsignedShortType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( 100 * c.getIntPosition( 1 ) + c.getIntPosition( 0 ) );
+		}
+
+		// blocks are relative to the min of the source, the last ones are truncated
+		final RandomAccessibleInterval< UnsignedShortType > source = Views.translate( img, 5, -3 );
+		final int[] blockSize = new int[]{ 4, 4 };
+		final DataBlock< ? > block = N5BlockUtils.createDataBlock( source, DataType.UINT16, blockSize, new long[]{ 2, 1 } );
+		Assert.assertArrayEquals( "size", new int[]{ 2, 3 }, block.getSize() );
+		Assert.assertArrayEquals( "grid position", new long[]{ 2, 1 }, block.getGridPosition() );
+		Assert.assertArrayEquals( "data", new short[]{ 408, 409, 508, 509, 608, 609 }, ( short[] ) block.getData() );
+
+		// wrap views the block data without copying
+		final RandomAccessibleInterval< UnsignedShortType > wrapped = N5BlockUtils.wrap( block, DataType.UINT16, new long[]{ 2, 3 } );
+		final RandomAccess< UnsignedShortType > ra = wrapped.randomAccess();
+		ra.setPosition( new long[]{ 1, 2 } );
+		Assert.assertEquals( "wrapped", 609, ra.get().get() );
+		ra.get().set( 1 );
+		Assert.assertEquals( "shared", 1, ( ( short[] ) block.getData() )[ 5 ] );
+	}
+
+	@Test
+	public void testCreateARGBDataBlock()
+	{
+		final int[] pixels = new int[]{
+				ARGBType.rgba( 1, 2, 3, 255 ), ARGBType.rgba( 4, 5, 6, 255 ),
+				ARGBType.rgba( 7, 8, 9, 128 ), ARGBType.rgba( 255, 0, 255, 0 ) };
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( pixels, 2, 2 );
+
+		final DataBlock< ? > block = N5BlockUtils.createDataBlock( img, DataType.UINT32, new int[]{ 2, 2 }, new long[]{ 0, 0 } );
+		Assert.assertArrayEquals( "argb", pixels, ( int[] ) block.getData() );
+
+		final RandomAccessibleInterval< UnsignedIntType > wrapped = N5BlockUtils.wrap( block, DataType.UINT32, new long[]{ 2, 2 } );
+		final RandomAccess< UnsignedIntType > ra = wrapped.randomAccess();
+		ra.setPosition( new long[]{ 1, 1 } );
+		Assert.assertEquals( "unsigned", pixels[ 3 ] & 0xffffffffL, ra.get().get() );
+	}
+}
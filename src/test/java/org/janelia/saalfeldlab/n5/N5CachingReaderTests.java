@@ -0,0 +1,73 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class N5CachingReaderTests
+{
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	private final DatasetAttributes attributes = new DatasetAttributes(
+			new long[]{ 8, 8 }, new int[]{ 4, 4 }, DataType.UINT8, new RawCompression() );
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-caching-test" ).toFile();
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+		n5.createDataset( "a/d", attributes );
+		n5.setAttribute( "a", "name", "first" );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testCache() throws IOException
+	{
+		final N5CachingReader cached = new N5CachingReader( n5 );
+		Assert.assertEquals( "attribute", "first", cached.getAttribute( "/a", "name", String.class ) );
+		Assert.assertTrue( "dataset", cached.datasetExists( "a/d" ) );
+		Assert.assertFalse( "group", cached.datasetExists( "a" ) );
+		Assert.assertArrayEquals( "dimensions", attributes.getDimensions(), cached.getDatasetAttributes( "a/d/" ).getDimensions() );
+
+		// writes through another reader are not seen until invalidated
+		n5.setAttribute( "a", "name", "second" );
+		Assert.assertEquals( "cached", "first", cached.getAttribute( "a", "name", String.class ) );
+		cached.getAttributes( "a" ).clear();
+		Assert.assertEquals( "copies", "first", cached.getAttribute( "a", "name", String.class ) );
+
+		cached.invalidate( "/a" );
+		Assert.assertEquals( "invalidated", "second", cached.getAttribute( "a", "name", String.class ) );
+
+		// entries that live for 0 ms are read every time
+		final N5CachingReader uncached = new N5CachingReader( n5, 0 );
+		uncached.getAttributes( "a" );
+		n5.setAttribute( "a", "name", "third" );
+		Assert.assertEquals( "expired", "third", uncached.getAttribute( "a", "name", String.class ) );
+	}
+
+	@Test
+	public void testWrap()
+	{
+		final N5Reader wrapped = N5CachingReader.wrap( n5, N5CachingReader.NO_EXPIRY );
+		Assert.assertTrue( "wrapped", wrapped instanceof N5CachingReader );
+		Assert.assertSame( "wrapped once", wrapped, N5CachingReader.wrap( wrapped, N5CachingReader.NO_EXPIRY ) );
+		Assert.assertSame( "unwrap", n5, N5CachingReader.unwrap( wrapped ) );
+		Assert.assertSame( "unwrap other", n5, N5CachingReader.unwrap( n5 ) );
+		Assert.assertEquals( "parallelism of the backend", N5DatasetDiscoverer.defaultParallelism( n5 ),
+				N5DatasetDiscoverer.defaultParallelism( wrapped ) );
+	}
+}
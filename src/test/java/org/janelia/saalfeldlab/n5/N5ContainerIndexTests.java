@@ -0,0 +1,120 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.metadata.N5GroupParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class N5ContainerIndexTests
+{
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-index-test" ).toFile();
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[]{ 10, 20, 30 }, new int[]{ 5, 5, 5 }, DataType.UINT16, new RawCompression() );
+		n5.createDataset( "a/b/d", attributes );
+		n5.createDataset( "e", attributes );
+		n5.writeBlock( "e", attributes, DataType.UINT16.createDataBlock( new int[]{ 5, 5, 5 }, new long[]{ 0, 0, 0 } ) );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testReadWrite() throws IOException, InterruptedException
+	{
+		Assert.assertNull( "none yet", N5ContainerIndex.read( n5 ) );
+		N5ContainerIndex.reindex( n5, N5Importer.PARSERS );
+
+		final N5ContainerIndex index = N5ContainerIndex.read( n5 );
+		Assert.assertNotNull( "written", index );
+		Assert.assertTrue( "fresh", index.isFresh( n5 ) );
+		Assert.assertTrue( "nested dataset", index.isDataset( "/a/b/d" ) );
+		Assert.assertFalse( "group", index.isDataset( "a/b" ) );
+		Assert.assertFalse( "no block grid", index.getPaths().contains( "e/0" ) );
+		Assert.assertNotNull( "dataset metadata type", index.getMetadataType( "e" ) );
+		Assert.assertNull( "no group metadata type", index.getMetadataType( "a/b" ) );
+		Assert.assertFalse( "not in the root attributes", n5.getAttributes( "/" ).containsKey( N5ContainerIndex.KEY ) );
+		Assert.assertTrue( "own group", n5.exists( N5ContainerIndex.GROUP ) );
+		Assert.assertFalse( "index not indexed", index.getPaths().contains( N5ContainerIndex.GROUP ) );
+
+		// modification times may have a resolution of a second
+		Thread.sleep( 1100 );
+		n5.createGroup( "f" );
+		Assert.assertFalse( "new root child", N5ContainerIndex.read( n5 ).isFresh( n5 ) );
+	}
+
+	@Test
+	public void testFreshness() throws IOException, InterruptedException
+	{
+		N5ContainerIndex.reindex( n5, N5Importer.PARSERS );
+		Assert.assertTrue( "fresh", N5ContainerIndex.read( n5 ).isFresh( n5 ) );
+
+		// modification times may have a resolution of a second
+		Thread.sleep( 1100 );
+		n5.createDataset( "a/b/added", new DatasetAttributes( new long[]{ 4, 4 }, new int[]{ 2, 2 }, DataType.UINT8, new RawCompression() ) );
+		Assert.assertFalse( "dataset added below the root", N5ContainerIndex.read( n5 ).isFresh( n5 ) );
+
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( new N5GroupParser[ 0 ], N5Importer.PARSERS );
+		Assert.assertTrue( "stale index not used", discoverer.discoverRecursive( n5, "/" ).printRecursive().contains( "added" ) );
+
+		discoverer.setTrustContainerIndex( true );
+		Assert.assertFalse( "trusted index used", discoverer.discoverRecursive( n5, "/" ).printRecursive().contains( "added" ) );
+
+		N5ContainerIndex.reindex( n5, N5Importer.PARSERS );
+		Thread.sleep( 1100 );
+		n5.setAttribute( "a/b/d", "resolution", new double[]{ 2, 2, 2 } );
+		Assert.assertFalse( "attributes changed", N5ContainerIndex.read( n5 ).isFresh( n5 ) );
+	}
+
+	@Test
+	public void testUpdate() throws IOException
+	{
+		final N5ContainerIndex index = N5ContainerIndex.reindex( n5, N5Importer.PARSERS );
+		n5.createDataset( "a/g", new DatasetAttributes( new long[]{ 4, 4 }, new int[]{ 2, 2 }, DataType.UINT8, new RawCompression() ) );
+		n5.remove( "a/b" );
+
+		index.update( n5, "/a", N5Importer.PARSERS );
+		Assert.assertTrue( "added", index.isDataset( "a/g" ) );
+		Assert.assertFalse( "removed", index.getPaths().contains( "a/b/d" ) );
+		Assert.assertTrue( "other subtrees kept", index.isDataset( "e" ) );
+	}
+
+	@Test
+	public void testDiscover() throws IOException, InterruptedException, ExecutionException
+	{
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( new N5GroupParser[ 0 ], N5Importer.PARSERS );
+		final String expected = discoverer.discoverRecursive( n5, "/" ).printRecursive();
+
+		N5ContainerIndex.reindex( n5, N5Importer.PARSERS );
+		final N5TreeNode root = discoverer.discoverRecursive( n5, "/" );
+		Assert.assertEquals( "same tree", expected, root.printRecursive() );
+		Assert.assertNotNull( "dataset metadata", ( ( N5TreeNode ) root.getFirstLeaf() ).getMetadata() );
+
+		// crawling does not list the index group
+		Thread.sleep( 1100 );
+		n5.createGroup( "f" );
+		Assert.assertFalse( "stale", N5ContainerIndex.read( n5 ).isFresh( n5 ) );
+		final N5TreeNode crawled = discoverer.discoverAsync( n5, new N5TreeNode( "/", false ) ).get();
+		Assert.assertTrue( "crawled", crawled.printRecursive().contains( "/f" ) );
+		Assert.assertFalse( "index group hidden", crawled.printRecursive().contains( N5ContainerIndex.GROUP ) );
+	}
+}
@@ -0,0 +1,320 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.metadata.N5GroupParser;
+import org.janelia.saalfeldlab.n5.metadata.N5ViewerMultiscaleMetadataParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+
+public class N5DatasetDiscovererTests
+{
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-discover-test" ).toFile();
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[]{ 8, 8, 8 }, new int[]{ 4, 4, 4 }, DataType.UINT8, new RawCompression() );
+
+		n5.createDataset( "a/b/d1", attributes );
+		n5.createGroup( "a/c/empty" );
+		n5.createDataset( "e", attributes );
+		for ( int i = 0; i < 12; i++ )
+			n5.createDataset( "f/s" + i, attributes );
+
+		n5.writeBlock( "e", attributes, DataType.UINT8.createDataBlock( new int[]{ 4, 4, 4 }, new long[]{ 1, 0, 0 } ) );
+		n5.createDataset( "numbered/0", attributes );
+		n5.createDataset( "numbered/1", attributes );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testDiscoverRecursive() throws IOException
+	{
+		final N5TreeNode serial = discoverer( 1 ).discoverRecursive( n5, "/" );
+		final N5TreeNode parallel = discoverer( 8 ).discoverRecursive( n5, "/" );
+
+		Assert.assertEquals( "same tree", serial.printRecursive(), parallel.printRecursive() );
+
+		// groups without datasets are trimmed
+		Assert.assertFalse( "trimmed", parallel.printRecursive().contains( "empty" ));
+
+		// alphanumeric order
+		final N5TreeNode f = parallel.childrenList().stream().filter( x -> x.toString().equals( "f" ) ).findFirst().get();
+		Assert.assertEquals( "s2 before s10", "s2", f.childrenList().get( 2 ).toString() );
+		Assert.assertEquals( "s10 last but one", "s10", f.childrenList().get( 10 ).toString() );
+		Assert.assertNotNull( "dataset metadata", f.childrenList().get( 0 ).getMetadata() );
+	}
+
+	@Test
+	public void testBlockGrid() throws IOException
+	{
+		Assert.assertTrue( "dataset blocks", N5DatasetDiscoverer.isBlockGrid( n5, "/e", n5.list( "/e" ) ) );
+		Assert.assertFalse( "scale levels", N5DatasetDiscoverer.isBlockGrid( n5, "/f", n5.list( "/f" ) ) );
+		Assert.assertFalse( "numbered datasets", N5DatasetDiscoverer.isBlockGrid( n5, "/numbered", n5.list( "/numbered" ) ) );
+
+		final N5TreeNode root = discoverer( 2 ).discoverRecursive( n5, "/" );
+		final N5TreeNode numbered = root.childrenList().stream().filter( x -> x.toString().equals( "numbered" ) ).findFirst().get();
+		Assert.assertEquals( "numbered datasets found", 2, numbered.childrenList().size() );
+
+		// numbered groups without attributes, such as time points
+		final DatasetAttributes attributes = n5.getDatasetAttributes( "e" );
+		n5.createDataset( "t/0/s0", attributes );
+		n5.createDataset( "t/1/s0", attributes );
+		Assert.assertFalse( "numbered groups", N5DatasetDiscoverer.isBlockGrid( n5, "/t", n5.list( "/t" ) ) );
+		Assert.assertFalse( "read error", N5DatasetDiscoverer.isBlockGrid( n5, "/missing", new String[]{ "0" } ) );
+
+		// only the group is read, not its children
+		final Set< String > read = ConcurrentHashMap.newKeySet();
+		final N5FSReader recording = new N5FSReader( n5.getBasePath() )
+		{
+			@Override
+			public HashMap< String, JsonElement > getAttributes( final String pathName ) throws IOException
+			{
+				read.add( pathName );
+				return super.getAttributes( pathName );
+			}
+
+			@Override
+			public String[] list( final String pathName ) throws IOException
+			{
+				read.add( pathName );
+				return super.list( pathName );
+			}
+		};
+		Assert.assertFalse( "numbered groups unread", N5DatasetDiscoverer.isBlockGrid( recording, "/t", n5.list( "/t" ) ) );
+		Assert.assertTrue( "dataset blocks unread", N5DatasetDiscoverer.isBlockGrid( recording, "/e", n5.list( "/e" ) ) );
+		for ( final String path : read )
+			Assert.assertTrue( "read " + path, path.equals( "/t" ) || path.equals( "/e" ) );
+
+		final N5TreeNode t = discoverer( 2 ).discoverRecursive( n5, "/" ).childrenList().stream()
+				.filter( x -> x.toString().equals( "t" ) ).findFirst().get();
+		Assert.assertEquals( "time points found", 2, t.childrenList().size() );
+	}
+
+	@Test
+	public void testMaxChildren() throws IOException
+	{
+		final N5DatasetDiscoverer discoverer = discoverer( 2 );
+		discoverer.setMaxChildrenPerNode( 3 );
+		final N5TreeNode f = discoverer.discoverRecursive( n5, "/f" );
+		Assert.assertEquals( "children per node", 3, f.childrenList().size() );
+		Assert.assertTrue( "truncated", f.isTruncated() );
+		Assert.assertEquals( "first children in order", "s0 s1 s2",
+				f.childrenList().stream().map( N5TreeNode::toString ).collect( Collectors.joining( " " ) ) );
+
+		Assert.assertFalse( "not truncated", discoverer( 2 ).discoverRecursive( n5, "/f" ).isTruncated() );
+	}
+
+	@Test
+	public void testDiscoveryListener() throws IOException, InterruptedException, ExecutionException
+	{
+		final N5DatasetDiscoverer discoverer = discoverer( 4 );
+		final N5TreeNode root = new N5TreeNode( "/", false );
+		discoverer.discoverAsync( n5, root, new N5DatasetDiscoverer.DiscoveryListener()
+		{
+			@Override
+			public synchronized void discovered( final N5TreeNode parent, final N5TreeNode node )
+			{
+				if ( parent != null )
+					discoverer.addSorted( parent, node );
+			}
+
+			@Override
+			public synchronized void completed( final N5TreeNode node )
+			{
+				if ( !discoverer.finishNode( node ) && node.getParent() != null )
+					node.removeFromParent();
+			}
+		}).get();
+
+		final N5TreeNode expected = discoverer( 4 ).discoverRecursive( n5, "/" );
+		Assert.assertEquals( "same tree", expected.printRecursive(), root.printRecursive() );
+	}
+
+	@Test
+	@SuppressWarnings( "deprecation" )
+	public void testDiscoverThreads() throws IOException, InterruptedException, ExecutionException
+	{
+		final N5DatasetDiscoverer discoverer = discoverer( 2 );
+		final N5TreeNode root = new N5TreeNode( "/", false );
+		final LinkedBlockingQueue< Future< N5TreeNode > > futures = discoverer.discoverThreads( n5, root );
+		Assert.assertEquals( "one future", 1, futures.size() );
+		Assert.assertSame( "discovered root", root, futures.poll().get() );
+	}
+
+	@Test
+	public void testExecutor() throws IOException, InterruptedException, ExecutionException
+	{
+		final N5TreeNode expected = discoverer( 2 ).discoverRecursive( n5, "/" );
+
+		// executors that are not a ForkJoinPool still work
+		for ( final ExecutorService executor : new ExecutorService[]{
+				Executors.newFixedThreadPool( 2 ),
+				Executors.newCachedThreadPool(),
+				new ForkJoinPool( 2 ) } )
+		{
+			try
+			{
+				final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(
+						executor,
+						new N5GroupParser[]{ new N5ViewerMultiscaleMetadataParser() },
+						N5Importer.PARSERS );
+				final N5TreeNode root = new N5TreeNode( "/", false );
+				final N5TreeNode tree = discoverer.partialTree( discoverer.discoverAsync( n5, root ), root, 60000 );
+				Assert.assertEquals( "same tree " + executor.getClass().getSimpleName(), expected.printRecursive(), tree.printRecursive() );
+			}
+			finally
+			{
+				executor.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testDiscoverWithin() throws IOException, InterruptedException, ExecutionException
+	{
+		final N5TreeNode expected = discoverer( 2 ).discoverRecursive( n5, "/" );
+		final N5TreeNode complete = discoverer( 2 ).discoverWithin( n5, new N5TreeNode( "/", false ), 60000 );
+		Assert.assertEquals( "same tree", expected.printRecursive(), complete.printRecursive() );
+		Assert.assertTrue( "explored", allExplored( complete ) );
+
+		// without a budget, the leaves of the partial tree are datasets or not explored yet
+		final N5DatasetDiscoverer discoverer = discoverer( 2 );
+		final N5TreeNode root = new N5TreeNode( "/", false );
+		final Future< N5TreeNode > future = discoverer.discoverAsync( n5, root );
+		final N5TreeNode partial = discoverer.partialTree( future, root, 0 );
+		for ( N5TreeNode leaf = partial.getFirstLeaf(); leaf != null; leaf = nextLeaf( leaf ) )
+			Assert.assertTrue( "openable or unexplored", leaf == partial || leaf.isDataset() || !leaf.isExplored() );
+
+		// discovery goes on
+		future.get();
+		Assert.assertTrue( "explored in the background", allExplored( root ) );
+
+		// unexplored nodes are not trimmed
+		final N5TreeNode group = new N5TreeNode( "/g", false );
+		final N5TreeNode unexplored = new N5TreeNode( "/g/h", false );
+		unexplored.setExplored( false );
+		group.add( unexplored );
+		group.add( new N5TreeNode( "/g/i", false ) );
+		discoverer.sortAndTrimRecursive( group );
+		Assert.assertEquals( "unexplored kept", 1, group.getChildCount() );
+		Assert.assertSame( "unexplored kept", unexplored, group.getChildAt( 0 ) );
+	}
+
+	private static boolean allExplored( final N5TreeNode node )
+	{
+		return node.isExplored() && node.childrenList().stream().allMatch( N5DatasetDiscovererTests::allExplored );
+	}
+
+	private static N5TreeNode nextLeaf( final N5TreeNode leaf )
+	{
+		N5TreeNode node = leaf;
+		while ( node.getParent() != null )
+		{
+			final N5TreeNode parent = ( N5TreeNode ) node.getParent();
+			final int i = parent.getIndex( node );
+			if ( i + 1 < parent.getChildCount() )
+				return ( ( N5TreeNode ) parent.getChildAt( i + 1 ) ).getFirstLeaf();
+
+			node = parent;
+		}
+		return null;
+	}
+
+	@Test
+	public void testDiscoverFromKeys() throws IOException
+	{
+		final Path basePath = new File( n5.getBasePath() ).toPath();
+		final N5KeyLister lister = names -> {
+			try ( final Stream< Path > files = Files.walk( basePath ) )
+			{
+				return files.filter( x -> names.contains( x.getFileName().toString() ) )
+						.map( x -> basePath.relativize( x ).toString().replace( File.separatorChar, '/' ) )
+						.collect( Collectors.toList() );
+			}
+		};
+
+		final N5TreeNode expected = discoverer( 2 ).discoverRecursive( n5, "/" );
+		final N5TreeNode root = discoverer( 2 ).discoverFromKeys( n5, new N5TreeNode( "/", false ), lister );
+		Assert.assertEquals( "same tree", expected.printRecursive(), root.printRecursive() );
+
+		final N5TreeNode a = discoverer( 2 ).discoverFromKeys( n5, new N5TreeNode( "/a", false ), lister );
+		Assert.assertEquals( "below a", "/a/b/d1", ( ( N5TreeNode ) a.getFirstLeaf() ).path );
+	}
+
+	@Test
+	public void testSortAndTrim()
+	{
+		final N5TreeNode root = new N5TreeNode( "/", false );
+		for ( final String name : new String[]{ "s10", "s2", "s1" } )
+		{
+			final N5TreeNode group = new N5TreeNode( "/" + name, false );
+			root.add( group );
+			group.add( new N5TreeNode( group.path + "/empty", false ) );
+			if ( !name.equals( "s2" ) )
+				group.add( new N5TreeNode( group.path + "/d", true ) );
+		}
+
+		// deeper than the stack allows recursion
+		N5TreeNode deepest = root;
+		for ( int i = 0; i < 100000; i++ )
+		{
+			final N5TreeNode child = new N5TreeNode( deepest.path + "/x", false );
+			deepest.add( child );
+			deepest = child;
+		}
+
+		discoverer( 1 ).sortAndTrimRecursive( root );
+		Assert.assertEquals( "trimmed and sorted", "/\n /s1\n  /s1/d\n /s10\n  /s10/d\n", toString( root, "" ) );
+	}
+
+	private static String toString( final N5TreeNode node, final String prefix )
+	{
+		final StringBuilder out = new StringBuilder( prefix + node.path + "\n" );
+		for ( final N5TreeNode c : node.childrenList() )
+			out.append( toString( c, prefix + " " ) );
+
+		return out.toString();
+	}
+
+	private static N5DatasetDiscoverer discoverer( final int parallelism )
+	{
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(
+				new N5GroupParser[]{ new N5ViewerMultiscaleMetadataParser() },
+				N5Importer.PARSERS );
+		discoverer.setParallelism( parallelism );
+		return discoverer;
+	}
+}
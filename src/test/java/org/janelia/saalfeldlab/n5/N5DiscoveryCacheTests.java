@@ -0,0 +1,101 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class N5DiscoveryCacheTests
+{
+	private File baseDir;
+
+	private File cacheDir;
+
+	private N5FSWriter n5;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-cache-test" ).toFile();
+		cacheDir = new File( baseDir, "cache" );
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[]{ 8, 8 }, new int[]{ 4, 4 }, DataType.UINT8, new RawCompression() );
+		n5.createDataset( "a/b", attributes );
+		n5.createDataset( "c", attributes );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		for ( final File f : cacheDir.listFiles() )
+			f.delete();
+		cacheDir.delete();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testCache() throws IOException, InterruptedException, ExecutionException
+	{
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( null, N5Importer.PARSERS );
+		discoverer.setCache( cache() );
+		final N5TreeNode first = discoverer.discoverAsync( n5, new N5TreeNode( "/", false ) ).get();
+		discoverer.sortAndTrimRecursive( first );
+		discoverer.getCache().save();
+
+		// a new cache reads the saved entries
+		final N5DiscoveryCache cache = cache();
+		Assert.assertTrue( "root cached", cache.lookup( "/" ).isValid() );
+		Assert.assertTrue( "dataset cached", cache.lookup( "/c" ).isValid() );
+		Assert.assertTrue( "dataset flag", cache.lookup( "/c" ).isDataset() );
+
+		discoverer.setCache( cache );
+		final N5TreeNode second = discoverer.discoverAsync( n5, new N5TreeNode( "/", false ) ).get();
+		discoverer.sortAndTrimRecursive( second );
+		Assert.assertEquals( "same tree", first.printRecursive(), second.printRecursive() );
+
+		// changed attributes invalidate the node
+		n5.setAttribute( "c", "foo", "bar" );
+		final File attributesFile = new File( n5.getBasePath(), "c/attributes.json" );
+		attributesFile.setLastModified( attributesFile.lastModified() + 2000 );
+		Assert.assertFalse( "changed node", cache.lookup( "/c" ).isValid() );
+		Assert.assertTrue( "unchanged node", cache.lookup( "/a/b" ).isValid() );
+	}
+
+	@Test
+	public void testUncachedChildren() throws IOException, InterruptedException, ExecutionException
+	{
+		// like the cloud detectors, a version that does not change with the children
+		final N5DiscoveryCache cache = new N5DiscoveryCache( n5.getBasePath(), path -> "etag", cacheDir );
+		cache.setCacheChildren( false );
+
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( null, N5Importer.PARSERS );
+		discoverer.setCache( cache );
+		final N5TreeNode first = discoverer.discoverAsync( n5, new N5TreeNode( "/", false ) ).get();
+		Assert.assertFalse( "not there yet", first.printRecursive().contains( "/d" ) );
+		Assert.assertTrue( "root cached", cache.lookup( "/" ).isValid() );
+		Assert.assertNull( "children not cached", cache.lookup( "/" ).getChildren() );
+
+		n5.createDataset( "d", n5.getDatasetAttributes( "c" ) );
+		final N5TreeNode second = discoverer.discoverAsync( n5, new N5TreeNode( "/", false ) ).get();
+		discoverer.sortAndTrimRecursive( second );
+		Assert.assertTrue( "new dataset found", second.printRecursive().contains( "/d" ) );
+		Assert.assertTrue( "cached dataset", second.printRecursive().contains( "/a/b" ) );
+	}
+
+	private N5DiscoveryCache cache()
+	{
+		return new N5DiscoveryCache(
+				n5.getBasePath(),
+				N5DiscoveryCache.fileSystemDetector( n5.getBasePath(), "attributes.json" ),
+				cacheDir );
+	}
+}
@@ -0,0 +1,98 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.metadata.N5GroupParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class N5DiscoveryFilterTests
+{
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-filter-test" ).toFile();
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+
+		n5.createDataset( "raw/a", attributes( 3, DataType.UINT16 ) );
+		n5.createDataset( "raw/b", attributes( 2, DataType.UINT16 ) );
+		n5.createDataset( "raw/c/d", attributes( 3, DataType.UINT8 ) );
+		n5.createDataset( "other/e", attributes( 3, DataType.UINT16 ) );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testPathGlob()
+	{
+		final N5DiscoveryFilter filter = N5DiscoveryFilter.pathGlob( "/raw/**" );
+		Assert.assertTrue( "root", filter.descend( "/", 0 ) );
+		Assert.assertTrue( "base", filter.descend( "/raw", 1 ) );
+		Assert.assertTrue( "below base", filter.descend( "raw/c", 2 ) );
+		Assert.assertFalse( "beside base", filter.descend( "/other", 1 ) );
+		Assert.assertFalse( "base not matched", filter.parse( "/raw", 1 ) );
+		Assert.assertTrue( "deep match", filter.parse( "/raw/c/d", 3 ) );
+
+		final N5DiscoveryFilter oneLevel = N5DiscoveryFilter.pathGlob( "raw/*" );
+		Assert.assertTrue( "one level", oneLevel.parse( "raw/a", 2 ) );
+		Assert.assertFalse( "not two levels", oneLevel.parse( "raw/c/d", 3 ) );
+	}
+
+	@Test
+	public void testDiscover() throws IOException
+	{
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( new N5GroupParser[ 0 ], N5Importer.PARSERS );
+		discoverer.setDiscoveryFilter( N5DiscoveryFilter.and(
+				N5DiscoveryFilter.pathGlob( "raw/**" ),
+				N5DiscoveryFilter.numDimensions( 3 ),
+				N5DiscoveryFilter.dataType( DataType.UINT16 ) ) );
+
+		final List< String > paths = new ArrayList<>();
+		leaves( discoverer.discoverRecursive( n5, "/" ), paths );
+		Assert.assertEquals( "3d uint16 under raw", 1, paths.size() );
+		Assert.assertEquals( "3d uint16 under raw", "/raw/a", paths.get( 0 ) );
+
+		discoverer.setDiscoveryFilter( N5DiscoveryFilter.maxDepth( 2 ) );
+		paths.clear();
+		leaves( discoverer.discoverRecursive( n5, "/" ), paths );
+		Assert.assertEquals( "two levels", 3, paths.size() );
+		Assert.assertFalse( "not deeper", paths.contains( "/raw/c/d" ) );
+	}
+
+	private static void leaves( final N5TreeNode node, final List< String > paths )
+	{
+		if ( node.isLeaf() )
+			paths.add( node.path );
+
+		for ( final N5TreeNode c : node.childrenList() )
+			leaves( c, paths );
+	}
+
+	private static DatasetAttributes attributes( final int numDimensions, final DataType dataType )
+	{
+		final long[] dimensions = new long[ numDimensions ];
+		final int[] blockSize = new int[ numDimensions ];
+		for ( int d = 0; d < numDimensions; d++ )
+		{
+			dimensions[ d ] = 8;
+			blockSize[ d ] = 4;
+		}
+		return new DatasetAttributes( dimensions, blockSize, dataType, new RawCompression() );
+	}
+}
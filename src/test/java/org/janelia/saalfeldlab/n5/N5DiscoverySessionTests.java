@@ -0,0 +1,94 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.metadata.N5GroupParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class N5DiscoverySessionTests
+{
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-session-test" ).toFile();
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[]{ 8, 8 }, new int[]{ 4, 4 }, DataType.UINT8, new RawCompression() );
+		for ( int i = 0; i < 10; i++ )
+			n5.createDataset( "g" + i + "/d", attributes );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testCancelBefore() throws IOException
+	{
+		final N5DiscoverySession session = new N5DiscoverySession();
+		session.cancel();
+
+		final ExecutorService executor = session.register( Executors.newSingleThreadExecutor() );
+		Assert.assertTrue( "registered after cancel", executor.isShutdown() );
+
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( new N5GroupParser[ 0 ], N5Importer.PARSERS );
+		discoverer.setSession( session );
+		try
+		{
+			discoverer.discoverRecursive( n5, "/" );
+			Assert.fail( "discovery should be cancelled" );
+		}
+		catch ( final CancellationException e ) {}
+	}
+
+	@Test
+	public void testCancelDuring() throws InterruptedException, TimeoutException
+	{
+		final N5DiscoverySession session = new N5DiscoverySession();
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( new N5GroupParser[ 0 ], N5Importer.PARSERS );
+		discoverer.setSession( session );
+
+		final Future< N5TreeNode > future = discoverer.discoverAsync( n5, new N5TreeNode( "/", false ),
+				new N5DatasetDiscoverer.DiscoveryListener()
+				{
+					@Override
+					public void discovered( final N5TreeNode parent, final N5TreeNode node )
+					{
+						session.cancel();
+					}
+
+					@Override
+					public void completed( final N5TreeNode node ) {}
+				});
+
+		try
+		{
+			future.get( 10, TimeUnit.SECONDS );
+			Assert.fail( "discovery should be cancelled" );
+		}
+		catch ( final CancellationException | ExecutionException e ) {}
+
+		Assert.assertTrue( "cancelled", session.isCancelled() );
+	}
+}
@@ -0,0 +1,247 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.janelia.saalfeldlab.n5.ij.N5BlockUtils;
+import org.janelia.saalfeldlab.n5.ij.N5ExportPipeline;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.ShortArray;
+import net.imglib2.img.imageplus.ImagePlusImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+
+public class N5ExportPipelineTests
+{
+	private static final int[] blockSize = new int[]{ 8, 7, 3 };
+
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	private ArrayImg< UnsignedShortType, ShortArray > img;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-pipeline-test" ).toFile();
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+
+		// sizes that leave border blocks
+		final Random rnd = new Random( 42 );
+		img = ArrayImgs.unsignedShorts( 29, 22, 10 );
+		for ( final UnsignedShortType t : img )
+			t.set( rnd.nextInt( 65535 ) );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testMatchesSerialSave() throws IOException, InterruptedException, ExecutionException
+	{
+		N5Utils.save( img, n5, "serial", blockSize, new GzipCompression() );
+
+		// more blocks in flight than the queue holds
+		new N5ExportPipeline( 3, 4, 2 ).save( img, n5, "pipeline", blockSize, new GzipCompression() );
+		assertSameBlocks( "serial", "pipeline" );
+
+		new N5ExportPipeline( 1, 1, 1 ).save( img, n5, "single", blockSize, new GzipCompression() );
+		assertSameBlocks( "serial", "single" );
+	}
+
+	@Test
+	public void testMatchesSerialSaveImagePlus() throws IOException, InterruptedException, ExecutionException
+	{
+		final ImagePlus imp = NewImage.createImage( "test", 29, 22, 2 * 5, 16, NewImage.FILL_NOISE );
+		imp.setDimensions( 2, 5, 1 );
+
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		final RandomAccessibleInterval< UnsignedShortType > rai = ( RandomAccessibleInterval ) ImagePlusImgs.from( imp );
+		final int[] blockSize4d = new int[]{ 8, 7, 2, 3 };
+		N5Utils.save( rai, n5, "serial", blockSize4d, new RawCompression() );
+		new N5ExportPipeline( 2, 3 ).save( imp, n5, "pipeline", blockSize4d, new RawCompression() );
+		assertSameBlocks( "serial", "pipeline" );
+	}
+
+	@Test
+	public void testWriterError() throws IOException, InterruptedException, ExecutionException
+	{
+		final FailingWriter failing = new FailingWriter( n5.getBasePath(), 5, new IOException( "disk full" ) );
+		try
+		{
+			new N5ExportPipeline( 2, 3 ).save( recorded( failing.threads ), failing, "failing", blockSize, new RawCompression() );
+			Assert.fail( "no exception" );
+		}
+		catch ( final IOException e )
+		{
+			Assert.assertEquals( "io exception", "disk full", e.getMessage() );
+		}
+		assertTerminated( failing.threads );
+
+		final FailingWriter unchecked = new FailingWriter( n5.getBasePath(), 0, new IllegalStateException( "broken" ) );
+		try
+		{
+			new N5ExportPipeline( 2, 3 ).save( recorded( unchecked.threads ), unchecked, "unchecked", blockSize, new RawCompression() );
+			Assert.fail( "no exception" );
+		}
+		catch ( final IOException e )
+		{
+			Assert.assertTrue( "wrapped", e.getCause() instanceof IllegalStateException );
+		}
+		assertTerminated( unchecked.threads );
+	}
+
+	@Test
+	public void testExtractError() throws IOException, InterruptedException
+	{
+		// the noise never reaches the maximum
+		final RandomAccess< UnsignedShortType > ra = img.randomAccess();
+		ra.setPosition( new long[]{ 20, 15, 7 } );
+		ra.get().set( 65535 );
+
+		final Set< Thread > threads = ConcurrentHashMap.newKeySet();
+		final RandomAccessibleInterval< UnsignedShortType > broken = Converters.convert(
+				( RandomAccessibleInterval< UnsignedShortType > ) img,
+				( a, b ) -> {
+					threads.add( Thread.currentThread() );
+					if ( a.get() == 65535 )
+						throw new IllegalArgumentException( "bad pixel" );
+					b.set( a );
+				},
+				new UnsignedShortType() );
+		try
+		{
+			new N5ExportPipeline( 2, 3 ).save( broken, n5, "broken", blockSize, new RawCompression() );
+			Assert.fail( "no exception" );
+		}
+		catch ( final ExecutionException e )
+		{
+			Assert.assertTrue( "cause", e.getCause() instanceof IllegalArgumentException );
+		}
+		assertTerminated( threads );
+	}
+
+	@Test
+	public void testPoolsShutDown() throws IOException, InterruptedException, ExecutionException
+	{
+		N5Utils.save( img, n5, "serial", blockSize, new RawCompression() );
+
+		final FailingWriter writer = new FailingWriter( n5.getBasePath(), -1, null );
+		final Set< Thread > extractThreads = ConcurrentHashMap.newKeySet();
+		new N5ExportPipeline( 2, 3 ).save( recorded( extractThreads ), writer, "recorded", blockSize, new RawCompression() );
+
+		Assert.assertFalse( "extractors ran", extractThreads.isEmpty() );
+		Assert.assertFalse( "writers ran", writer.threads.isEmpty() );
+		Assert.assertTrue( "separate pools", Collections.disjoint( extractThreads, writer.threads ) );
+		assertTerminated( extractThreads );
+		assertTerminated( writer.threads );
+		assertSameBlocks( "serial", "recorded" );
+	}
+
+	private void assertSameBlocks( final String expectedDataset, final String dataset ) throws IOException
+	{
+		final DatasetAttributes expectedAttributes = n5.getDatasetAttributes( expectedDataset );
+		final DatasetAttributes attributes = n5.getDatasetAttributes( dataset );
+		Assert.assertArrayEquals( "dimensions " + dataset, expectedAttributes.getDimensions(), attributes.getDimensions() );
+		Assert.assertEquals( "data type " + dataset, expectedAttributes.getDataType(), attributes.getDataType() );
+
+		final long[] gridDimensions = N5BlockUtils.gridDimensions( attributes.getDimensions(), attributes.getBlockSize() );
+		for ( long i = 0; i < Intervals.numElements( gridDimensions ); i++ )
+		{
+			final long[] gridPosition = N5BlockUtils.gridPosition( i, gridDimensions );
+			final DataBlock< ? > expected = n5.readBlock( expectedDataset, expectedAttributes, gridPosition );
+			final DataBlock< ? > block = n5.readBlock( dataset, attributes, gridPosition );
+
+			final String msg = dataset + " " + Arrays.toString( gridPosition );
+			Assert.assertNotNull( "block " + msg, block );
+			Assert.assertArrayEquals( "size " + msg, expected.getSize(), block.getSize() );
+			Assert.assertArrayEquals( "data " + msg, expected.toByteBuffer().array(), block.toByteBuffer().array() );
+		}
+	}
+
+	/*
+	 * A view of the image that records the threads that extract blocks.
+	 */
+	private RandomAccessibleInterval< UnsignedShortType > recorded( final Set< Thread > threads )
+	{
+		return Converters.convert(
+				( RandomAccessibleInterval< UnsignedShortType > ) img,
+				( a, b ) -> {
+					threads.add( Thread.currentThread() );
+					b.set( a );
+				},
+				new UnsignedShortType() );
+	}
+
+	private static void assertTerminated( final Set< Thread > threads ) throws InterruptedException
+	{
+		Assert.assertFalse( "threads ran", threads.isEmpty() );
+		for ( final Thread t : threads )
+		{
+			t.join( 10000 );
+			Assert.assertFalse( "terminated " + t.getName(), t.isAlive() );
+		}
+	}
+
+	/*
+	 * Records the threads that write blocks and fails on the block with the
+	 * given flat index, or never if it is negative.
+	 */
+	private static class FailingWriter extends N5FSWriter
+	{
+		final Set< Thread > threads = ConcurrentHashMap.newKeySet();
+
+		private final long failIndex;
+
+		private final Exception error;
+
+		FailingWriter( final String basePath, final long failIndex, final Exception error ) throws IOException
+		{
+			super( basePath );
+			this.failIndex = failIndex;
+			this.error = error;
+		}
+
+		@Override
+		public < T > void writeBlock(
+				final String pathName,
+				final DatasetAttributes datasetAttributes,
+				final DataBlock< T > dataBlock ) throws IOException
+		{
+			threads.add( Thread.currentThread() );
+			final long[] gridDimensions = N5BlockUtils.gridDimensions( datasetAttributes.getDimensions(), datasetAttributes.getBlockSize() );
+			final long[] failPosition = failIndex < 0 ? null : N5BlockUtils.gridPosition( failIndex, gridDimensions );
+			if ( Arrays.equals( failPosition, dataBlock.getGridPosition() ) )
+			{
+				if ( error instanceof IOException )
+					throw ( IOException ) error;
+				throw ( RuntimeException ) error;
+			}
+			super.writeBlock( pathName, datasetAttributes, dataBlock );
+		}
+	}
+}
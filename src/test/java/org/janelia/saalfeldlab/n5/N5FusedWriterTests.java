@@ -0,0 +1,175 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.ij.N5BlockUtils;
+import org.janelia.saalfeldlab.n5.ij.N5IJUtils;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ColorProcessor;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.imageplus.ImagePlusImgs;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class N5FusedWriterTests
+{
+	private static final int[] blockSize = new int[]{ 8, 5, 2 };
+
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	private ImagePlus imp;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "n5-fused-test" ).toFile();
+		n5 = new N5FSWriter( new File( baseDir, "test.n5" ).getAbsolutePath() );
+
+		// gray values with every fifth pixel colored, sizes that leave border blocks
+		final Random rnd = new Random( 42 );
+		final ImageStack stack = new ImageStack( 19, 13 );
+		for ( int z = 0; z < 5; z++ )
+		{
+			final ColorProcessor cp = new ColorProcessor( 19, 13 );
+			for ( int y = 0; y < 13; y++ )
+				for ( int x = 0; x < 19; x++ )
+				{
+					final int v = rnd.nextInt( 256 );
+					if ( ( x + y + z ) % 5 == 0 )
+						cp.set( x, y, ARGBType.rgba( v, ( v + 1 ) % 256, v, 255 ) );
+					else
+						cp.set( x, y, ARGBType.rgba( v, v, v, 255 ) );
+				}
+			stack.addSlice( cp );
+		}
+		imp = new ImagePlus( "masked", stack );
+
+		saveTwoPass( imp, n5, "expected" );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		n5.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testSaveMaskedUnsignedByte() throws IOException
+	{
+		N5IJUtils.saveMaskedUnsignedByte( imp, n5, "fused", blockSize, new GzipCompression() );
+		assertMatchesTwoPass( "fused" );
+	}
+
+	@Test
+	public void testSaveMaskedUnsignedByteParallel() throws IOException, InterruptedException, ExecutionException
+	{
+		final ExecutorService exec = Executors.newFixedThreadPool( 3 );
+		try
+		{
+			N5IJUtils.saveMaskedUnsignedByte( imp, n5, "fused", blockSize, new GzipCompression(), exec );
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+		assertMatchesTwoPass( "fused" );
+	}
+
+	private void assertMatchesTwoPass( final String group ) throws IOException
+	{
+		for ( final String name : new String[]{ "mask", "gray" } )
+		{
+			final DatasetAttributes expectedAttributes = n5.getDatasetAttributes( "expected/" + name );
+			final DatasetAttributes attributes = n5.getDatasetAttributes( group + "/" + name );
+			Assert.assertArrayEquals( "dimensions " + name, expectedAttributes.getDimensions(), attributes.getDimensions() );
+			Assert.assertArrayEquals( "block size " + name, expectedAttributes.getBlockSize(), attributes.getBlockSize() );
+			Assert.assertEquals( "data type " + name, expectedAttributes.getDataType(), attributes.getDataType() );
+
+			final long[] gridDimensions = N5BlockUtils.gridDimensions( attributes.getDimensions(), blockSize );
+			for ( long i = 0; i < Intervals.numElements( gridDimensions ); i++ )
+			{
+				final long[] gridPosition = N5BlockUtils.gridPosition( i, gridDimensions );
+				final DataBlock< ? > expected = n5.readBlock( "expected/" + name, expectedAttributes, gridPosition );
+				final DataBlock< ? > block = n5.readBlock( group + "/" + name, attributes, gridPosition );
+
+				final String msg = name + " " + Arrays.toString( gridPosition );
+				Assert.assertNotNull( "block " + msg, block );
+				Assert.assertArrayEquals( "size " + msg, expected.getSize(), block.getSize() );
+				Assert.assertArrayEquals( "data " + msg, expected.toByteBuffer().array(), block.toByteBuffer().array() );
+			}
+		}
+
+		// colored pixels are masked out, gray pixels are not
+		final RandomAccessibleInterval< UnsignedByteType > mask = N5Utils.open( n5, group + "/mask" );
+		final RandomAccessibleInterval< UnsignedByteType > gray = N5Utils.open( n5, group + "/gray" );
+		final Cursor< UnsignedByteType > m = Views.flatIterable( mask ).localizingCursor();
+		final Cursor< UnsignedByteType > g = Views.flatIterable( gray ).cursor();
+		int maskedOut = 0;
+		while ( m.hasNext() )
+		{
+			m.fwd();
+			g.fwd();
+			final int x = m.getIntPosition( 0 );
+			final int y = m.getIntPosition( 1 );
+			final int z = m.getIntPosition( 2 );
+			final int rgb = imp.getStack().getProcessor( z + 1 ).get( x, y );
+			final boolean colored = ( x + y + z ) % 5 == 0;
+			Assert.assertEquals( "mask " + x + " " + y + " " + z, colored ? 0 : 1, m.get().get() );
+			Assert.assertEquals( "gray " + x + " " + y + " " + z, ARGBType.red( rgb ), g.get().get() );
+			if ( colored )
+				++maskedOut;
+		}
+		Assert.assertTrue( "masked out voxels", maskedOut > 0 );
+	}
+
+	/*
+	 * The previous implementation: one converted view and one pass over the
+	 * image per dataset.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static void saveTwoPass( final ImagePlus imp, final N5Writer n5, final String groupName ) throws IOException
+	{
+		final RandomAccessibleInterval< ARGBType > rai = ( RandomAccessibleInterval< ARGBType > ) ImagePlusImgs.from( imp );
+
+		final RandomAccessibleInterval< UnsignedByteType > mask = Converters.convert(
+				rai,
+				( argb, uint8 ) -> {
+					final int argbValue = argb.get();
+					final int r = ARGBType.red( argbValue );
+					final int g = ARGBType.green( argbValue );
+					final int b = ARGBType.blue( argbValue );
+					uint8.set( r == g && g == b ? 1 : 0 );
+				},
+				new UnsignedByteType() );
+
+		final RandomAccessibleInterval< UnsignedByteType > gray = Converters.convert(
+				rai,
+				( argb, uint8 ) -> uint8.set( ARGBType.red( argb.get() ) ),
+				new UnsignedByteType() );
+
+		n5.createGroup( groupName );
+		N5Utils.save( mask, n5, groupName + "/mask", blockSize, new GzipCompression() );
+		N5Utils.save( gray, n5, groupName + "/gray", blockSize, new GzipCompression() );
+	}
+}
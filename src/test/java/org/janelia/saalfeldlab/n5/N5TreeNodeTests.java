@@ -0,0 +1,52 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.util.Arrays;
+
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class N5TreeNodeTests
+{
+	@Test
+	public void testNames()
+	{
+		Assert.assertEquals( "root", "/", new N5TreeNode( "/", false ).toString() );
+		Assert.assertEquals( "empty root", "/", new N5TreeNode( "", false ).toString() );
+		Assert.assertEquals( "nested", "s0", new N5TreeNode( "/a/b/s0", true ).getNodeName() );
+		Assert.assertEquals( "trailing slash", "b", new N5TreeNode( "a/b/", false ).getNodeName() );
+		Assert.assertSame( "interned", new N5TreeNode( "/a/s0", true ).getNodeName(), new N5TreeNode( "/b/s0", true ).getNodeName() );
+	}
+
+	@Test
+	public void testTreeModel()
+	{
+		final N5TreeNode root = new N5TreeNode( "/", false );
+		final N5TreeNode a = new N5TreeNode( "/a", false );
+		final N5TreeNode s0 = new N5TreeNode( "/a/s0", true );
+		final N5TreeNode s1 = new N5TreeNode( "/a/s1", true );
+
+		final DefaultTreeModel model = new DefaultTreeModel( root );
+		model.insertNodeInto( a, root, 0 );
+		model.insertNodeInto( s1, a, 0 );
+		model.insertNodeInto( s0, a, 0 );
+		Assert.assertArrayEquals( "path", new TreeNode[]{ root, a, s0 }, s0.getPath() );
+		Assert.assertEquals( "level", 2, s1.getLevel() );
+		Assert.assertSame( "first leaf", s0, root.getFirstLeaf() );
+		Assert.assertEquals( "children", Arrays.asList( s0, s1 ), a.childrenList() );
+		Assert.assertEquals( "no children", 0, s0.childrenList().size() );
+
+		// adding a child again moves it to the end
+		a.add( s0 );
+		Assert.assertEquals( "moved", 1, a.getIndex( s0 ) );
+
+		model.removeNodeFromParent( s1 );
+		Assert.assertNull( "detached", s1.getParent() );
+		Assert.assertEquals( "remaining", 1, a.getChildCount() );
+
+		a.setAllowsChildren( false );
+		Assert.assertTrue( "children removed", a.isLeaf() );
+	}
+}
@@ -0,0 +1,101 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.metadata.MetadataParserIndex;
+import org.janelia.saalfeldlab.n5.metadata.N5GsonMetadataParser;
+import org.janelia.saalfeldlab.n5.metadata.N5Metadata;
+import org.janelia.saalfeldlab.n5.metadata.N5MetadataParser;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares trying every metadata parser on every node with selecting parsers
+ * by the attribute keys of the node, on in-memory attributes.
+ *
+ * Arguments: [number of nodes (default 100000)]
+ */
+public class ParserDispatchBenchmark
+{
+	private static final String[] ATTRIBUTES = new String[]{
+			"{}",
+			"{\"dimensions\":[64,64,64],\"blockSize\":[32,32,32],\"dataType\":\"uint8\",\"compression\":{\"type\":\"raw\"}}",
+			"{\"dimensions\":[64,64,64],\"blockSize\":[32,32,32],\"dataType\":\"uint16\",\"compression\":{\"type\":\"raw\"},"
+					+ "\"downsamplingFactors\":[2,2,2],\"pixelResolution\":{\"unit\":\"um\",\"dimensions\":[1,1,1]},"
+					+ "\"affineTransform\":[1,0,0,0,0,1,0,0,0,0,1,0]}",
+			"{\"scales\":[[1,1,1],[2,2,2]],\"multiScale\":true}"
+	};
+
+	public static void main( final String[] args ) throws IOException
+	{
+		final int numNodes = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 100000;
+
+		final N5Reader n5 = new N5FSReader( Files.createTempDirectory( "n5-dispatch" ).toString() );
+		final N5TreeNode[] nodes = new N5TreeNode[ numNodes ];
+		@SuppressWarnings( "unchecked" )
+		final HashMap< String, JsonElement >[] attributes = new HashMap[ numNodes ];
+		for ( int i = 0; i < numNodes; i++ )
+		{
+			nodes[ i ] = new N5TreeNode( "/n" + i, false );
+			attributes[ i ] = toMap( new JsonParser().parse( ATTRIBUTES[ i % ATTRIBUTES.length ] ).getAsJsonObject() );
+		}
+
+		final MetadataParserIndex index = new MetadataParserIndex( N5Importer.PARSERS );
+		for ( int trial = 0; trial < 3; trial++ )
+		{
+			long start = System.currentTimeMillis();
+			int found = 0;
+			for ( int i = 0; i < numNodes; i++ )
+				if ( tryEveryParser( nodes[ i ], N5Importer.PARSERS, attributes[ i ] ) != null )
+					found++;
+
+			System.out.println( "every parser: " + ( System.currentTimeMillis() - start ) + " ms, " + found + " parsed" );
+
+			start = System.currentTimeMillis();
+			found = 0;
+			for ( int i = 0; i < numNodes; i++ )
+			{
+				nodes[ i ].setMetadata( null );
+				N5DatasetDiscoverer.parseMetadata( n5, nodes[ i ], index, null, attributes[ i ] );
+				if ( nodes[ i ].getMetadata() != null )
+					found++;
+			}
+
+			System.out.println( "key index:    " + ( System.currentTimeMillis() - start ) + " ms, " + found + " parsed" );
+		}
+	}
+
+	/*
+	 * How N5DatasetDiscoverer.parseMetadata selected parsers before.
+	 */
+	private static N5Metadata tryEveryParser( final N5TreeNode node, final N5MetadataParser< ? >[] parsers,
+			final HashMap< String, JsonElement > jsonMap )
+	{
+		for ( final N5MetadataParser< ? > parser : parsers )
+		{
+			try
+			{
+				final N5Metadata meta = ( ( N5GsonMetadataParser< ? > ) parser ).parseMetadataGson( node.path, jsonMap );
+				if ( meta != null )
+					return meta;
+			}
+			catch ( final Exception e ) {}
+		}
+		return null;
+	}
+
+	private static HashMap< String, JsonElement > toMap( final JsonObject obj )
+	{
+		final HashMap< String, JsonElement > map = new HashMap<>();
+		for ( final Map.Entry< String, JsonElement > e : obj.entrySet() )
+			map.put( e.getKey(), e.getValue() );
+
+		return map;
+	}
+}
@@ -0,0 +1,97 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+
+import se.sawano.java.text.AlphanumericComparator;
+
+/**
+ * Compares sorting and trimming a synthetic tree the way
+ * N5DatasetDiscoverer#sortAndTrimRecursive did before, sorting every subtree
+ * again at every depth, with the single pass it does now.
+ *
+ * Arguments: [number of nodes (default 1000000)] [children per group (default 100)]
+ */
+public class SortAndTrimBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final int numNodes = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 1000000;
+		final int numChildren = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 100;
+
+		final Comparator< String > comparator = new AlphanumericComparator( Collator.getInstance() );
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( null, N5Importer.PARSERS );
+		for ( int trial = 0; trial < 3; trial++ )
+		{
+			N5TreeNode root = tree( numNodes, numChildren );
+			long start = System.currentTimeMillis();
+			sortAndTrimBefore( root, comparator );
+			System.out.println( "per depth:   " + ( System.currentTimeMillis() - start ) + " ms" );
+
+			root = tree( numNodes, numChildren );
+			start = System.currentTimeMillis();
+			discoverer.sortAndTrimRecursive( root );
+			System.out.println( "single pass: " + ( System.currentTimeMillis() - start ) + " ms" );
+		}
+	}
+
+	/*
+	 * A tree of groups with numChildren children each, in random order, where
+	 * the leaves are datasets except every tenth.
+	 */
+	private static N5TreeNode tree( final int numNodes, final int numChildren )
+	{
+		final Random random = new Random( 1 );
+		final N5TreeNode[] nodes = new N5TreeNode[ numNodes ];
+		nodes[ 0 ] = new N5TreeNode( "", false );
+		for ( int i = 1; i < numNodes; i++ )
+		{
+			final N5TreeNode parent = nodes[ ( i - 1 ) / numChildren ];
+			nodes[ i ] = new N5TreeNode( parent.path + "/n" + random.nextInt( numNodes ), i * numChildren >= numNodes && i % 10 != 0 );
+			parent.add( nodes[ i ] );
+		}
+		return nodes[ 0 ];
+	}
+
+	/*
+	 * How N5DatasetDiscoverer.sortAndTrimRecursive worked before.
+	 */
+	private static void sortAndTrimBefore( final N5TreeNode node, final Comparator< String > comparator )
+	{
+		trim( node );
+		sort( node, comparator );
+		for ( final N5TreeNode c : node.childrenList() )
+			sortAndTrimBefore( c, comparator );
+	}
+
+	private static boolean trim( final N5TreeNode node )
+	{
+		final List< N5TreeNode > children = node.childrenList();
+		if ( children.isEmpty() )
+			return node.isDataset();
+
+		boolean ret = false;
+		for ( final N5TreeNode childNode : children )
+		{
+			if ( !trim( childNode ) )
+				node.remove( childNode );
+			else
+				ret = true;
+		}
+		return ret || node.getMetadata() != null;
+	}
+
+	private static void sort( final N5TreeNode node, final Comparator< String > comparator )
+	{
+		final List< N5TreeNode > children = node.childrenList();
+		children.sort( Comparator.comparing( N5TreeNode::toString, comparator ) );
+		node.removeAllChildren();
+		children.forEach( node::add );
+		for ( final N5TreeNode childNode : node.childrenList() )
+			sort( childNode, comparator );
+	}
+}
@@ -0,0 +1,74 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.metadata.N5GroupParser;
+import org.janelia.saalfeldlab.n5.zarr.N5ZarrWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+
+public class ZarrConsolidatedMetadataTests
+{
+	private File baseDir;
+
+	private N5ZarrWriter zarr;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		baseDir = Files.createTempDirectory( "zarr-consolidated-test" ).toFile();
+		zarr = new N5ZarrWriter( new File( baseDir, "test.zarr" ).getAbsolutePath() );
+
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[]{ 10, 20, 30 }, new int[]{ 5, 5, 5 }, DataType.UINT16, new RawCompression() );
+		zarr.createDataset( "a/b/d", attributes );
+		zarr.createDataset( "e", attributes );
+		zarr.setAttribute( "e", "title", "e" );
+		zarr.writeBlock( "e", attributes, DataType.UINT16.createDataBlock( new int[]{ 5, 5, 5 }, new long[]{ 0, 0, 0 } ) );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		zarr.remove();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testReadWrite() throws IOException
+	{
+		Assert.assertNull( "none yet", ZarrConsolidatedMetadata.read( zarr ) );
+		ZarrConsolidatedMetadata.write( zarr.getBasePath() );
+
+		final ZarrConsolidatedMetadata consolidated = ZarrConsolidatedMetadata.read( zarr );
+		Assert.assertNotNull( "written", consolidated );
+		Assert.assertTrue( "array", consolidated.getKeys().contains( "a/b/d/.zarray" ) );
+		Assert.assertTrue( "attributes", consolidated.getKeys().contains( "e/.zattrs" ) );
+
+		final HashMap< String, JsonElement > attributes = consolidated.getAttributes( "/e" );
+		Assert.assertEquals( "title", "e", attributes.get( "title" ).getAsString() );
+		Assert.assertEquals( "dimensions as the reader gives them",
+				zarr.getAttributes( "e" ).get( "dimensions" ), attributes.get( "dimensions" ) );
+		Assert.assertEquals( "data type", "uint16", attributes.get( "dataType" ).getAsString() );
+	}
+
+	@Test
+	public void testDiscover() throws IOException
+	{
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer( new N5GroupParser[ 0 ], N5Importer.PARSERS );
+		final String expected = discoverer.discoverRecursive( zarr, "/" ).printRecursive();
+
+		ZarrConsolidatedMetadata.write( zarr.getBasePath() );
+		final N5TreeNode root = discoverer.discoverRecursive( zarr, "/" );
+		Assert.assertEquals( "same tree", expected, root.printRecursive() );
+		Assert.assertNotNull( "dataset metadata", ( ( N5TreeNode ) root.getFirstLeaf() ).getMetadata() );
+	}
+}